@@ -1,13 +1,66 @@
 // importing necessary classes and packages for handling http connections, json processing, environment variables, and user input
 import io.github.cdimascio.dotenv.Dotenv;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
 import java.net.URL;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import javax.imageio.ImageIO;
 import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
 
 public class Main {
@@ -37,6 +90,39 @@ public class Main {
     private static final String ADD_FAVORITES_URL =
         ("https://api.themoviedb.org/3/account/" + ACCOUNT_ID + "/favorite?api_key=" + ACCESS_TOKEN);
 
+    // everything the cli keeps between runs lives in this folder in the user's home directory
+    private static final Path DATA_DIR = Paths.get(System.getProperty("user.home"), ".movie-explorer-cli");
+
+    // the snapshot collector walks the first few discover pages on a fixed schedule
+    // and appends whatever changed to the popularity time series
+    private static final int SNAPSHOT_PAGES = 5;
+    private static final long SNAPSHOT_INTERVAL_MINUTES = 60;
+    private static final PopularitySnapshotStore SNAPSHOTS = new PopularitySnapshotStore(DATA_DIR.resolve("popularity.snap"));
+
+    // posters are downloaded at the smallest tmdb size that covers what we draw, and drawn this many columns wide
+    private static final String IMAGE_BASE_URL = "https://image.tmdb.org/t/p/";
+    private static final int[] POSTER_WIDTHS = { 92, 154, 185, 342, 500, 780 };
+    private static final int[] BACKDROP_WIDTHS = { 300, 780, 1280 };
+    private static final int POSTER_COLUMNS = 24;
+    private static final long IMAGE_CACHE_BUDGET_BYTES = 50L * 1024 * 1024;
+    private static final TerminalImages.Mode IMAGE_MODE = TerminalImages.detect(dotenv.get("TERMINAL_IMAGES", null));
+    private static final ImageCache IMAGES = new ImageCache(DATA_DIR.resolve("images"), IMAGE_CACHE_BUDGET_BYTES);
+
+    // every screen renders within this budget, when tmdb is slow or down the last good response is shown instead
+    private static final long LATENCY_BUDGET_MILLIS = 3000;
+    private static final ResilientClient CLIENT = new ResilientClient(DATA_DIR.resolve("responses"), LATENCY_BUDGET_MILLIS);
+
+    // every movie we see is indexed locally so the details screen can suggest similar ones without calling the api
+    private static final SimilarityIndex SIMILAR = new SimilarityIndex(DATA_DIR.resolve("corpus.json"));
+
+    // the sub-resources each details view shows, requested together with the movie through append_to_response
+    // opening a movie from a list also prefetches the extended details of the entries around it
+    private static final DetailsCache DETAILS = new DetailsCache(CLIENT, API_KEY);
+    private static final Set<DetailsCache.Part> DETAILS_VIEW = EnumSet.of(DetailsCache.Part.CREDITS);
+    private static final Set<DetailsCache.Part> EXTENDED_VIEW = EnumSet.allOf(DetailsCache.Part.class);
+    private static final int PREFETCH_NEIGHBORS = 2;
+    private static final String WATCH_REGION = "US";
+
     // this serves as the entry point of the java program
     // public: allows jvm access from anywhere
     // static: runs without an instance of the class
@@ -49,6 +135,10 @@ public class Main {
         Scanner scanner = new Scanner(System.in);
         boolean running = true;
 
+        startSnapshotCollector();
+        SIMILAR.load();
+        startRecommendationSeeding();
+
         // 'while loop' that will continuously run
         // as long as 'running' is 'true'
         while (running) {
@@ -66,7 +156,8 @@ public class Main {
             System.out.println(" 3. View Watchlist - Your watch later list");
             System.out.println(" 4. View Favorites - Access your personal favorite movies");
             System.out.println(" 5. View Rated Movies - Acess the movies you've rated");
-            System.out.println("󰈆 6. Exit - Close the application");
+            System.out.println(" 6. Popularity Trends - See which movies are rising this week");
+            System.out.println("󰈆 7. Exit - Close the application");
             System.out.print("\nChoice: ");
             String choice = scanner.nextLine();
 
@@ -87,13 +178,16 @@ public class Main {
                     viewRatedMovies(scanner);
                     break;
                 case "6":
+                    viewPopularityTrends(scanner);
+                    break;
+                case "7":
                     // this sets the value of 'running' to 'false'
                     // terminating the 'while loop'
                     running = false;
                     System.out.println("Exiting the program.");
                     break;
                 default:
-                    // if the input is anything other than '1-6', will print 'invalid option...'
+                    // if the input is anything other than '1-7', will print 'invalid option...'
                     // then the loop will continue, prompting the user for the valid input
                     System.out.println("Invalid option. Please try again.");
             }
@@ -103,63 +197,99 @@ public class Main {
     }
 
     private static void discoverMovies(Scanner scanner) {
-        try {
+        // base url for fetching movies and the API_KEY is the personal key
+        // to authenticate the request
+        // we only use api key for api request because we're only accessing
+        // public data
+        ResilientClient.Response response = CLIENT.get("discover", DISCOVER_URL + "&api_key=" + API_KEY, false);
+        if (response.body != null) {
+            // provides methods to interact with json data,
+            // like getting values from the object by key
+            JSONObject jsonResponse = response.body;
+
+            // this stores json object
+            JSONArray results = jsonResponse.getJSONArray("results");
+            prefetchPosters(results);
+            SIMILAR.observe(results);
+
+            // results.length(): this gets the number of elements in the 'results' array,
+            // like how many movies are in the response
+            // movieCount: stores the number of movies
+            // to show how many movies were found in the output
+            int movieCount = results.length();
+
+            // i have already explained this :/
+            ConsoleUtils.clearConsole();
 
-            // base url for fetching movies and the API_KEY is the personal key
-            // to authenticate the request
-            // we only use api key for api request because we're only accessing
-            // public data
-            URL url = new URL(DISCOVER_URL + "&api_key=" + API_KEY);
+            // display the count of movies in the output
+            System.out.println("\nDiscover Movies (" + movieCount + " movies found)");
+            printStaleNotice(response);
+            for (int i = 0; i < results.length(); i++) {
+                JSONObject movie = results.getJSONObject(i);
+                String title = movie.getString("title");
+                double rating = movie.getDouble("vote_average");
+                String releaseDate = movie.getString("release_date");
+                String overview = movie.getString("overview");
+
+                // truncate overview to a specified length (150 characters)
+                String truncatedOverview = truncateOverview(overview, 150);
+                System.out.println("\n" + (i + 1) + ". \u001B[32m" + title + "\u001B[0m ( " + rating + " |  " + releaseDate + ") ");
+                System.out.println(truncatedOverview);
+            }
 
-            // this part opens a connection to the api using HttpURLConnection
-            // GET means we want to retrieve data from the server
-            // the Accept header tells the server that we want the response in json format
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("GET");
-            conn.setRequestProperty("Accept", "application/json");
-
-            // this checks the HTTP response code from the server
-            // to determine if the request was successful
-            // in the HTTP protocol, 200 OK is the standard response
-            // code that indicates the request was successful
-            if (conn.getResponseCode() == 200) {
-                BufferedReader in = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-                String inputLine;
-                StringBuilder response = new StringBuilder();
-
-                while ((inputLine = in.readLine()) != null) {
-                    response.append(inputLine);
-                }
-                in.close(); // hehe, to avoid memory leaks :) and to fress up system resources
-
-                // provides methods to interact with json data,
-                // like getting values from the object by key
-                JSONObject jsonResponse = new JSONObject(response.toString());
-
-                // this stores json object
-                JSONArray results = jsonResponse.getJSONArray("results");
-
-                // results.length(): this gets the number of elements in the 'results' array,
-                // like how many movies are in the response
-                // movieCount: stores the number of movies
-                // to show how many movies were found in the output
-                int movieCount = results.length();
-
-                // i have already explained this :/
-                ConsoleUtils.clearConsole();
-
-                // display the count of movies in the output
-                System.out.println("\nDiscover Movies (" + movieCount + " movies found)");
+            System.out.println("\nSelect a movie number to view details\nEnter 0 to go back");
+            System.out.print("\nOption: ");
+            int selection = scanner.nextInt();
+            scanner.nextLine();
+
+            // selection > 0: making sure the selected number is greater than 0
+            // selection <= results.length(): making sure the selected number is within the range of available movies
+            if (selection > 0 && selection <= results.length()) {
+
+                // since arrays are 0-based, subtract 1 to 'selection'
+                // to get the correvt index in the results array
+                // .getInt("id"): extracts the if field of the selected movie
+                // then pass it to 'fetchAndShowMovieDetails' to view detailed infomation
+                int movieId = results.getJSONObject(selection - 1).getInt("id");
+                prefetchNeighbors(results, selection - 1);
+                fetchAndShowMovieDetails(movieId, scanner, "discover", true);
+            }
+        } else {
+            System.out.println("Error: Unable to fetch data from TheMovieDB API. " + response.error);
+            pauseForMessage();
+        }
+    }
+
+    private static void searchMovies(Scanner scanner) {
+        ConsoleUtils.clearConsole(); // clear the menu at the top to only shows relevant data for search function
+        System.out.print("\n Search: ");
+        String query = scanner.nextLine();
+
+        String searchQuery = SEARCH_URL + query.replace(" ", "%20") + "&api_key=" + API_KEY;
+        ResilientClient.Response response = CLIENT.get("search", searchQuery, false);
+        if (response.body != null) {
+            JSONObject jsonResponse = response.body;
+            JSONArray results = jsonResponse.getJSONArray("results");
+            prefetchPosters(results);
+            SIMILAR.observe(results);
+
+            // get movie count from the search results
+            int movieCount = results.length();
+
+            if (results.length() > 0) {
+                System.out.println("\nSearch Results (" + movieCount + " movies found)");
+                printStaleNotice(response);
                 for (int i = 0; i < results.length(); i++) {
                     JSONObject movie = results.getJSONObject(i);
                     String title = movie.getString("title");
                     double rating = movie.getDouble("vote_average");
                     String releaseDate = movie.getString("release_date");
                     String overview = movie.getString("overview");
-
                     // truncate overview to a specified length (150 characters)
                     String truncatedOverview = truncateOverview(overview, 150);
-                    System.out.println("\n" + (i + 1) + ". \u001B[32m" + title + "\u001B[0m ( " + rating + " |  " + releaseDate + ") ");
+                    System.out.println(
+                        "\n" + (i + 1) + ". \u001B[32m" + title + "\u001B[0m ( " + rating + " |  " + releaseDate + ") "
+                    );
                     System.out.println(truncatedOverview);
                 }
 
@@ -167,333 +297,299 @@ public class Main {
                 System.out.print("\nOption: ");
                 int selection = scanner.nextInt();
                 scanner.nextLine();
-
-                // selection > 0: making sure the selected number is greater than 0
-                // selection <= results.length(): making sure the selected number is within the range of available movies
                 if (selection > 0 && selection <= results.length()) {
-
-                    // since arrays are 0-based, subtract 1 to 'selection'
-                    // to get the correvt index in the results array
-                    // .getInt("id"): extracts the if field of the selected movie
-                    // then pass it to 'fetchAndShowMovieDetails' to view detailed infomation
                     int movieId = results.getJSONObject(selection - 1).getInt("id");
-                    fetchAndShowMovieDetails(movieId, scanner, "discover", true);
+                    prefetchNeighbors(results, selection - 1);
+                    fetchAndShowMovieDetails(movieId, scanner, "search", true);
                 }
             } else {
-                System.out.println("Error: Unable to fetch data from TheMovieDB API. Response code: " + conn.getResponseCode());
+                System.out.println("No movies found with that title.");
             }
-            conn.disconnect();
-        } catch (IOException e) {
-            e.printStackTrace();
+        } else {
+            System.out.println("Error: Unable to fetch data from TheMovieDB API. " + response.error);
+            pauseForMessage();
         }
     }
 
-    private static void searchMovies(Scanner scanner) {
-        ConsoleUtils.clearConsole(); // clear the menu at the top to only shows relevant data for search function
-        System.out.print("\n Search: ");
-        String query = scanner.nextLine();
+    private static void viewWatchlist(Scanner scanner) {
+        ResilientClient.Response response = CLIENT.get("watchlist", WATCHLIST_URL, true);
+        if (response.body != null) {
+            JSONObject jsonResponse = response.body;
+            JSONArray results = jsonResponse.getJSONArray("results");
+            prefetchPosters(results);
+            SIMILAR.observe(results);
+
+            // get movie count from the watchlist
+            int movieCount = results.length();
+
+            ConsoleUtils.clearConsole(); // clear the menu at the top to only shows relevant data for watchlist function
+            System.out.println("\nYour Watchlist (" + movieCount + " movies found)\n");
+            printStaleNotice(response);
+            for (int i = 0; i < results.length(); i++) {
+                JSONObject movie = results.getJSONObject(i);
+                String title = movie.getString("title");
+                double rating = movie.getDouble("vote_average");
+                System.out.println((i + 1) + ". " + title + " ( " + rating + ")");
+            }
 
-        try {
-            String searchQuery = SEARCH_URL + query.replace(" ", "%20") + "&api_key=" + API_KEY;
-            URL url = new URL(searchQuery);
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("GET");
-            conn.setRequestProperty("Accept", "application/json");
-
-            if (conn.getResponseCode() == 200) {
-                BufferedReader in = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-                String inputLine;
-                StringBuilder response = new StringBuilder();
-
-                while ((inputLine = in.readLine()) != null) {
-                    response.append(inputLine);
-                }
-                in.close();
-
-                JSONObject jsonResponse = new JSONObject(response.toString());
-                JSONArray results = jsonResponse.getJSONArray("results");
-
-                // get movie count from the search results
-                int movieCount = results.length();
-
-                if (results.length() > 0) {
-                    System.out.println("\nSearch Results (" + movieCount + " movies found)");
-                    for (int i = 0; i < results.length(); i++) {
-                        JSONObject movie = results.getJSONObject(i);
-                        String title = movie.getString("title");
-                        double rating = movie.getDouble("vote_average");
-                        String releaseDate = movie.getString("release_date");
-                        String overview = movie.getString("overview");
-                        // truncate overview to a specified length (150 characters)
-                        String truncatedOverview = truncateOverview(overview, 150);
-                        System.out.println(
-                            "\n" + (i + 1) + ". \u001B[32m" + title + "\u001B[0m ( " + rating + " |  " + releaseDate + ") "
-                        );
-                        System.out.println(truncatedOverview);
-                    }
-
-                    System.out.println("\nSelect a movie number to view details\nEnter 0 to go back");
-                    System.out.print("\nOption: ");
-                    int selection = scanner.nextInt();
-                    scanner.nextLine();
-                    if (selection > 0 && selection <= results.length()) {
-                        int movieId = results.getJSONObject(selection - 1).getInt("id");
-                        fetchAndShowMovieDetails(movieId, scanner, "search", true);
-                    }
+            System.out.println(
+                "\nSelect a movie number to view details\nEnter 'x' to remove a movie from the watchlist\nEnter 0 to go back"
+            );
+            System.out.print("\nOption: ");
+            String input = scanner.nextLine();
+
+            if (input.equalsIgnoreCase("x")) {
+                System.out.print("\nEnter the number of the movie to remove: ");
+                int index = scanner.nextInt();
+                scanner.nextLine();
+
+                if (index > 0 && index <= results.length()) {
+                    int movieId = results.getJSONObject(index - 1).getInt("id");
+                    updateWatchlist(movieId, false);
+
+                    // call viewWatchlist again to refresh after removal
+                    viewWatchlist(scanner);
                 } else {
-                    System.out.println("No movies found with that title.");
+                    System.out.println("Invalid number.");
+                    viewWatchlist(scanner); // stay on watchlist page for invalid input
                 }
             } else {
-                System.out.println("Error: Unable to fetch data from TheMovieDB API. Response code: " + conn.getResponseCode());
+                int selection = Integer.parseInt(input);
+                if (selection == 0) {
+                    return; // go back to previous menu
+                } else if (selection > 0 && selection <= results.length()) {
+                    int movieId = results.getJSONObject(selection - 1).getInt("id");
+                    prefetchNeighbors(results, selection - 1);
+                    fetchAndShowMovieDetails(movieId, scanner, "watchlist", false);
+                }
             }
-            conn.disconnect();
-        } catch (IOException e) {
-            e.printStackTrace();
+        } else {
+            System.out.println("Failed to retrieve watchlist. " + response.error);
+            pauseForMessage();
         }
     }
 
-    private static void viewWatchlist(Scanner scanner) {
-        try {
-            URL url = new URL(WATCHLIST_URL);
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("GET");
-            conn.setRequestProperty("Authorization", "Bearer " + ACCESS_TOKEN);
-            conn.setRequestProperty("Content-Type", "application/json");
-
-            int responseCode = conn.getResponseCode();
-            if (responseCode == HttpURLConnection.HTTP_OK) {
-                StringBuilder content = new StringBuilder();
-                try (BufferedReader in = new BufferedReader(new InputStreamReader(conn.getInputStream()))) {
-                    String inputLine;
-                    while ((inputLine = in.readLine()) != null) {
-                        content.append(inputLine);
-                    }
-                }
-
-                JSONObject jsonResponse = new JSONObject(content.toString());
-                JSONArray results = jsonResponse.getJSONArray("results");
-
-                // get movie count from the watchlist
-                int movieCount = results.length();
+    private static void viewFavorites(Scanner scanner) {
+        ResilientClient.Response response = CLIENT.get("favorites", FAVORITES_URL, true);
+        if (response.body != null) {
+            JSONObject jsonResponse = response.body;
+            JSONArray results = jsonResponse.getJSONArray("results");
+            prefetchPosters(results);
+            SIMILAR.observe(results);
+            if (!response.stale) {
+                seedFromFavorites(results);
+            }
 
-                ConsoleUtils.clearConsole(); // clear the menu at the top to only shows relevant data for watchlist function
-                System.out.println("\nYour Watchlist (" + movieCount + " movies found)\n");
-                for (int i = 0; i < results.length(); i++) {
-                    JSONObject movie = results.getJSONObject(i);
-                    String title = movie.getString("title");
-                    double rating = movie.getDouble("vote_average");
-                    System.out.println((i + 1) + ". " + title + " ( " + rating + ")");
-                }
+            // get movie count from the favorites list
+            int movieCount = results.length();
 
-                System.out.println(
-                    "\nSelect a movie number to view details\nEnter 'x' to remove a movie from the watchlist\nEnter 0 to go back"
-                );
-                System.out.print("\nOption: ");
-                String input = scanner.nextLine();
+            ConsoleUtils.clearConsole();
+            System.out.println("\nYour Favorites List (" + movieCount + " movies found)\n");
+            printStaleNotice(response);
+            for (int i = 0; i < results.length(); i++) {
+                JSONObject movie = results.getJSONObject(i);
+                String title = movie.getString("title");
+                double rating = movie.getDouble("vote_average");
+                System.out.println((i + 1) + ". " + title + " ( " + rating + ")");
+            }
 
-                if (input.equalsIgnoreCase("x")) {
-                    System.out.print("\nEnter the number of the movie to remove: ");
-                    int index = scanner.nextInt();
-                    scanner.nextLine();
+            System.out.println(
+                "\nSelect a movie number to view details\nEnter 'x' to remove a movie from favorites\nEnter 0 to go back"
+            );
+            System.out.print("\nOption: ");
+            String input = scanner.nextLine();
 
-                    if (index > 0 && index <= results.length()) {
-                        int movieId = results.getJSONObject(index - 1).getInt("id");
-                        updateWatchlist(movieId, false);
+            if (input.equalsIgnoreCase("x")) {
+                System.out.print("\nEnter the number of the movie to remove: ");
+                int index = scanner.nextInt();
+                scanner.nextLine();
 
-                        // call viewWatchlist again to refresh after removal
-                        viewWatchlist(scanner);
-                    } else {
-                        System.out.println("Invalid number.");
-                        viewWatchlist(scanner); // stay on watchlist page for invalid input
+                if (index > 0 && index <= results.length()) {
+                    int movieId = results.getJSONObject(index - 1).getInt("id");
+                    if (updateFavorites(movieId, false)) {
+                        SIMILAR.unseedFavorite(movieId);
                     }
+
+                    // refresh the favorites view after removal
+                    viewFavorites(scanner);
                 } else {
-                    int selection = Integer.parseInt(input);
-                    if (selection == 0) {
-                        return; // go back to previous menu
-                    } else if (selection > 0 && selection <= results.length()) {
-                        int movieId = results.getJSONObject(selection - 1).getInt("id");
-                        fetchAndShowMovieDetails(movieId, scanner, "watchlist", false);
-                    }
+                    System.out.println("Invalid number.");
+                    viewFavorites(scanner); // stay on the favorites page for invalid input
                 }
             } else {
-                System.out.println("Failed to retrieve watchlist. Response code: " + responseCode);
+                int selection = Integer.parseInt(input);
+                if (selection == 0) {
+                    return; // go back to the previous menu
+                } else if (selection > 0 && selection <= results.length()) {
+                    int movieId = results.getJSONObject(selection - 1).getInt("id");
+                    prefetchNeighbors(results, selection - 1);
+                    fetchAndShowMovieDetails(movieId, scanner, "favorites", false);
+                }
             }
-            conn.disconnect();
-        } catch (IOException e) {
-            e.printStackTrace();
+        } else {
+            System.out.println("Failed to retrieve favorites list. " + response.error);
+            pauseForMessage();
         }
     }
 
-    private static void viewFavorites(Scanner scanner) {
-        try {
-            URL url = new URL(FAVORITES_URL);
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("GET");
-            conn.setRequestProperty("Authorization", "Bearer " + ACCESS_TOKEN);
-            conn.setRequestProperty("Content-Type", "application/json");
-
-            int responseCode = conn.getResponseCode();
-            if (responseCode == HttpURLConnection.HTTP_OK) {
-                StringBuilder content = new StringBuilder();
-                try (BufferedReader in = new BufferedReader(new InputStreamReader(conn.getInputStream()))) {
-                    String inputLine;
-                    while ((inputLine = in.readLine()) != null) {
-                        content.append(inputLine);
-                    }
-                }
+    private static void viewRatedMovies(Scanner scanner) {
+        ResilientClient.Response response = CLIENT.get("rated", RATED_MOVIES_URL, true);
+        if (response.body != null) {
+            JSONObject jsonResponse = response.body;
+            JSONArray results = jsonResponse.getJSONArray("results");
+            prefetchPosters(results);
+            SIMILAR.observe(results);
+            if (!response.stale) {
+                seedFromRatings(results);
+            }
 
-                JSONObject jsonResponse = new JSONObject(content.toString());
-                JSONArray results = jsonResponse.getJSONArray("results");
+            // get movie count from rated movies
+            int movieCount = results.length();
 
-                // get movie count from the favorites list
-                int movieCount = results.length();
+            ConsoleUtils.clearConsole();
+            System.out.println("\nYour Rated Movies (" + movieCount + " movies found)\n");
+            printStaleNotice(response);
+            for (int i = 0; i < results.length(); i++) {
+                JSONObject movie = results.getJSONObject(i);
+                String title = movie.getString("title");
+                double rating = movie.getDouble("rating"); // use "rating" instead of "vote_average" for rated movies
+                System.out.println((i + 1) + ". " + title + " ( " + rating + ")");
+            }
 
-                ConsoleUtils.clearConsole();
-                System.out.println("\nYour Favorites List (" + movieCount + " movies found)\n");
-                for (int i = 0; i < results.length(); i++) {
-                    JSONObject movie = results.getJSONObject(i);
-                    String title = movie.getString("title");
-                    double rating = movie.getDouble("vote_average");
-                    System.out.println((i + 1) + ". " + title + " ( " + rating + ")");
-                }
+            System.out.println(
+                "\nSelect a movie number to view details\nEnter 'x' to delete a rating\nEnter 'e' to edit a rating\nEnter 0 to go back"
+            );
+            System.out.print("\nOption: ");
+            String input = scanner.nextLine();
 
-                System.out.println(
-                    "\nSelect a movie number to view details\nEnter 'x' to remove a movie from favorites\nEnter 0 to go back"
-                );
-                System.out.print("\nOption: ");
-                String input = scanner.nextLine();
+            if (input.equalsIgnoreCase("x")) {
+                System.out.print("\nEnter the number of the movie to delete the rating: ");
+                int index = scanner.nextInt();
+                scanner.nextLine();
 
-                if (input.equalsIgnoreCase("x")) {
-                    System.out.print("\nEnter the number of the movie to remove: ");
-                    int index = scanner.nextInt();
-                    scanner.nextLine();
+                if (index > 0 && index <= results.length()) {
+                    int movieId = results.getJSONObject(index - 1).getInt("id");
+                    if (updateRating(movieId, null)) {
+                        SIMILAR.unseedRating(movieId);
+                    }
+
+                    // refresh the rated movies view after deletion
+                    viewRatedMovies(scanner);
+                } else {
+                    System.out.println("Invalid index number.");
+                    viewRatedMovies(scanner); // stay on the rated movies page for invalid input
+                }
+            } else if (input.equalsIgnoreCase("e")) {
+                System.out.print("\nEnter the number of the movie to edit the rating: ");
+                int index = scanner.nextInt();
+                scanner.nextLine();
 
-                    if (index > 0 && index <= results.length()) {
-                        int movieId = results.getJSONObject(index - 1).getInt("id");
-                        updateFavorites(movieId, false);
+                if (index > 0 && index <= results.length()) {
+                    int movieId = results.getJSONObject(index - 1).getInt("id");
+                    System.out.print("Enter the new rating (0.5 to 10): ");
+                    double newRating = scanner.nextDouble();
+                    scanner.nextLine();
 
-                        // refresh the favorites view after removal
-                        viewFavorites(scanner);
+                    if (newRating >= 0.5 && newRating <= 10) {
+                        if (updateRating(movieId, newRating)) {
+                            SIMILAR.seedRating(movieId, newRating);
+                        }
                     } else {
-                        System.out.println("Invalid number.");
-                        viewFavorites(scanner); // stay on the favorites page for invalid input
+                        System.out.println("Invalid rating. Rating should be between 0.5 and 10.");
                     }
+
+                    // refresh the rated movies view after editing
+                    viewRatedMovies(scanner);
                 } else {
-                    int selection = Integer.parseInt(input);
-                    if (selection == 0) {
-                        return; // go back to the previous menu
-                    } else if (selection > 0 && selection <= results.length()) {
-                        int movieId = results.getJSONObject(selection - 1).getInt("id");
-                        fetchAndShowMovieDetails(movieId, scanner, "favorites", false);
-                    }
+                    System.out.println("Invalid index number.");
+                    viewRatedMovies(scanner); // stay on the rated movies page for invalid input
                 }
             } else {
-                System.out.println("Failed to retrieve favorites list. Response code: " + responseCode);
+                int selection = Integer.parseInt(input);
+                if (selection == 0) {
+                    return; // go back to the previous menu
+                } else if (selection > 0 && selection <= results.length()) {
+                    int movieId = results.getJSONObject(selection - 1).getInt("id");
+                    prefetchNeighbors(results, selection - 1);
+                    fetchAndShowMovieDetails(movieId, scanner, "rated", false);
+                }
             }
-            conn.disconnect();
-        } catch (IOException e) {
-            e.printStackTrace();
+        } else {
+            System.out.println("Failed to retrieve rated movies. " + response.error);
+            pauseForMessage();
         }
     }
 
-    private static void viewRatedMovies(Scanner scanner) {
+    private static void viewPopularityTrends(Scanner scanner) {
         try {
-            URL url = new URL(RATED_MOVIES_URL);
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("GET");
-            conn.setRequestProperty("Authorization", "Bearer " + ACCESS_TOKEN);
-            conn.setRequestProperty("Content-Type", "application/json");
-
-            int responseCode = conn.getResponseCode();
-            if (responseCode == HttpURLConnection.HTTP_OK) {
-                StringBuilder content = new StringBuilder();
-                try (BufferedReader in = new BufferedReader(new InputStreamReader(conn.getInputStream()))) {
-                    String inputLine;
-                    while ((inputLine = in.readLine()) != null) {
-                        content.append(inputLine);
-                    }
-                }
-
-                JSONObject jsonResponse = new JSONObject(content.toString());
-                JSONArray results = jsonResponse.getJSONArray("results");
+            SNAPSHOTS.load();
+        } catch (IOException e) {
+            System.out.println("Could not read the popularity history: " + e.getMessage());
+            return;
+        }
 
-                // get movie count from rated movies
-                int movieCount = results.length();
+        // compare the latest snapshot against the rankings from a week ago
+        long weekAgo = Instant.now().getEpochSecond() - TimeUnit.DAYS.toSeconds(7);
+        List<PopularitySnapshotStore.Riser> risers = SNAPSHOTS.biggestRisers(weekAgo, 20);
 
-                ConsoleUtils.clearConsole();
-                System.out.println("\nYour Rated Movies (" + movieCount + " movies found)\n");
-                for (int i = 0; i < results.length(); i++) {
-                    JSONObject movie = results.getJSONObject(i);
-                    String title = movie.getString("title");
-                    double rating = movie.getDouble("rating"); // use "rating" instead of "vote_average" for rated movies
-                    System.out.println((i + 1) + ". " + title + " ( " + rating + ")");
-                }
+        ConsoleUtils.clearConsole();
+        System.out.println("\nBiggest Risers This Week (" + SNAPSHOTS.snapshotCount() + " snapshots recorded)");
+        if (risers.isEmpty()) {
+            System.out.println(
+                "\nNo popularity history yet. Snapshots are collected in the background every " + SNAPSHOT_INTERVAL_MINUTES + " minutes."
+            );
+            System.out.println("\nPress Enter to go back");
+            scanner.nextLine();
+            return;
+        }
 
-                System.out.println(
-                    "\nSelect a movie number to view details\nEnter 'x' to delete a rating\nEnter 'e' to edit a rating\nEnter 0 to go back"
-                );
-                System.out.print("\nOption: ");
-                String input = scanner.nextLine();
+        for (int i = 0; i < risers.size(); i++) {
+            PopularitySnapshotStore.Riser riser = risers.get(i);
+            String from = riser.fromRank == 0 ? "new" : "#" + riser.fromRank;
+            String movement = " \u25B2" + riser.climbed + " (" + from + " -> #" + riser.toRank + ")";
+            System.out.println("\n" + (i + 1) + ". \u001B[32m" + riser.title + "\u001B[0m " + movement);
+            System.out.println("    Rating: " + riser.fromVote + " -> " + riser.toVote);
+        }
 
-                if (input.equalsIgnoreCase("x")) {
-                    System.out.print("\nEnter the number of the movie to delete the rating: ");
-                    int index = scanner.nextInt();
-                    scanner.nextLine();
+        System.out.println("\nSelect a movie number to view its rating history\nEnter 0 to go back");
+        System.out.print("\nOption: ");
+        int selection = scanner.nextInt();
+        scanner.nextLine();
 
-                    if (index > 0 && index <= results.length()) {
-                        int movieId = results.getJSONObject(index - 1).getInt("id");
-                        updateRating(movieId, null);
+        if (selection > 0 && selection <= risers.size()) {
+            showRatingHistory(risers.get(selection - 1).movieId, scanner);
+        }
+    }
 
-                        // refresh the rated movies view after deletion
-                        viewRatedMovies(scanner);
-                    } else {
-                        System.out.println("Invalid index number.");
-                        viewRatedMovies(scanner); // stay on the rated movies page for invalid input
-                    }
-                } else if (input.equalsIgnoreCase("e")) {
-                    System.out.print("\nEnter the number of the movie to edit the rating: ");
-                    int index = scanner.nextInt();
-                    scanner.nextLine();
+    private static void showRatingHistory(int movieId, Scanner scanner) {
+        List<PopularitySnapshotStore.Point> history = SNAPSHOTS.history(movieId);
 
-                    if (index > 0 && index <= results.length()) {
-                        int movieId = results.getJSONObject(index - 1).getInt("id");
-                        System.out.print("Enter the new rating (0.5 to 10): ");
-                        double newRating = scanner.nextDouble();
-                        scanner.nextLine();
+        ConsoleUtils.clearConsole();
+        System.out.println("\nRating History - " + SNAPSHOTS.title(movieId) + "\n");
+        for (PopularitySnapshotStore.Point point : history) {
+            LocalDate day = Instant.ofEpochSecond(point.time).atZone(ZoneId.systemDefault()).toLocalDate();
+            String rank = point.rank == 0 ? "off the chart" : "#" + point.rank;
+            System.out.println(day + "  " + rank + "  ( " + point.vote + ")");
+        }
 
-                        if (newRating >= 0.5 && newRating <= 10) {
-                            updateRating(movieId, newRating);
-                        } else {
-                            System.out.println("Invalid rating. Rating should be between 0.5 and 10.");
-                        }
+        System.out.println("\nEnter 'd' to view movie details\nEnter 'b' to go back to the trends");
+        System.out.print("\nOption: ");
+        String input = scanner.nextLine();
 
-                        // refresh the rated movies view after editing
-                        viewRatedMovies(scanner);
-                    } else {
-                        System.out.println("Invalid index number.");
-                        viewRatedMovies(scanner); // stay on the rated movies page for invalid input
-                    }
-                } else {
-                    int selection = Integer.parseInt(input);
-                    if (selection == 0) {
-                        return; // go back to the previous menu
-                    } else if (selection > 0 && selection <= results.length()) {
-                        int movieId = results.getJSONObject(selection - 1).getInt("id");
-                        fetchAndShowMovieDetails(movieId, scanner, "rated", false);
-                    }
-                }
-            } else {
-                System.out.println("Failed to retrieve rated movies. Response code: " + responseCode);
-            }
-            conn.disconnect();
-        } catch (IOException e) {
-            e.printStackTrace();
+        if (input.equalsIgnoreCase("d")) {
+            fetchAndShowMovieDetails(movieId, scanner, "trends", true);
+        } else {
+            viewPopularityTrends(scanner);
         }
     }
 
-    private static void showMovieDetails(JSONObject movie, Scanner scanner, String previousMenu, boolean showActions) {
+    private static void showMovieDetails(JSONObject movie, Scanner scanner, String previousMenu, boolean showActions, boolean stale) {
         ConsoleUtils.clearConsole(); // clear the menu at the top to only shows relevant data for movie details function
         System.out.println("\nMovie Details");
+        if (stale) {
+            System.out.println("\u001B[33mTMDB is unreachable, showing saved details. Refreshing in the background.\u001B[0m");
+        }
+        showPoster(movie);
         String title = movie.getString("title");
         String tagline = movie.optString("tagline", ""); // use optString to avoid errors if tagline is missing
         String overview = movie.getString("overview");
@@ -526,6 +622,10 @@ public class Main {
         System.out.println("\n Release Date: " + releaseDate);
         System.out.println(" Rating: " + rating);
         System.out.println(" Genres: " + genres.toString());
+        JSONObject credits = movie.optJSONObject("credits");
+        if (credits != null) {
+            System.out.println(" Cast: " + joinNames(credits.getJSONArray("cast"), "name", 3));
+        }
 
         // in this 'if else' statement, this is a conditional statment wether to show more options
         // in the 'viewWatchlist', 'viewFavorites', and 'viewRatedMovies' method we set this to false
@@ -533,10 +633,12 @@ public class Main {
         // those sectins (or methods)
         if (showActions) {
             System.out.println(
-                "\nEnter 'r' to rate this movie\nEnter 'a' to add this movie to your watchlist\nEnter 'f' to add this movie to your favorites\nEnter 'b' to go back to the previous menu\nEnter 'e' to exit"
+                "\nEnter 'r' to rate this movie\nEnter 'a' to add this movie to your watchlist\nEnter 'f' to add this movie to your favorites\nEnter 's' to see similar movies\nEnter 'x' to view cast, trailers and where to watch\nEnter 'b' to go back to the previous menu\nEnter 'e' to exit"
             );
         } else {
-            System.out.println("\nEnter 'b' to go back to the previous menu\nEnter 'e' to exit");
+            System.out.println(
+                "\nEnter 's' to see similar movies\nEnter 'x' to view cast, trailers and where to watch\nEnter 'b' to go back to the previous menu\nEnter 'e' to exit"
+            );
         }
 
         System.out.print("\nOption: ");
@@ -544,15 +646,29 @@ public class Main {
 
         if (showActions && input.equalsIgnoreCase("a")) {
             updateWatchlist(movieId, true);
-            showMovieDetails(movie, scanner, previousMenu, showActions);
+            showMovieDetails(movie, scanner, previousMenu, showActions, stale);
         } else if (showActions && input.equalsIgnoreCase("f")) {
-            updateFavorites(movieId, true);
-            showMovieDetails(movie, scanner, previousMenu, showActions);
+            if (updateFavorites(movieId, true)) {
+                SIMILAR.seedFavorite(movieId);
+            }
+            showMovieDetails(movie, scanner, previousMenu, showActions, stale);
         } else if (showActions && input.equalsIgnoreCase("r")) {
             System.out.print("\nEnter your rating (0.5 to 10): ");
             double ratingValue = Double.parseDouble(scanner.nextLine());
-            updateRating(movieId, ratingValue);
-            showMovieDetails(movie, scanner, previousMenu, showActions);
+            if (updateRating(movieId, ratingValue)) {
+                SIMILAR.seedRating(movieId, ratingValue);
+            }
+            showMovieDetails(movie, scanner, previousMenu, showActions, stale);
+        } else if (input.equalsIgnoreCase("s")) {
+            int selected = showSimilarMovies(movieId, title, scanner);
+            if (selected > 0) {
+                fetchAndShowMovieDetails(selected, scanner, previousMenu, true);
+            } else {
+                showMovieDetails(movie, scanner, previousMenu, showActions, stale);
+            }
+        } else if (input.equalsIgnoreCase("x")) {
+            showExtendedDetails(movieId, title, scanner);
+            showMovieDetails(movie, scanner, previousMenu, showActions, stale);
         } else if (input.equalsIgnoreCase("b")) {
             // go back to the previous menu
             switch (previousMenu) {
@@ -571,6 +687,9 @@ public class Main {
                 case "rated":
                     viewRatedMovies(scanner);
                     break;
+                case "trends":
+                    viewPopularityTrends(scanner);
+                    break;
             }
         } else if (input.equalsIgnoreCase("e")) {
             System.out.println("Exiting the program.");
@@ -578,160 +697,2352 @@ public class Main {
         }
     }
 
-    private static void fetchAndShowMovieDetails(int movieId, Scanner scanner, String previousMenu, boolean showActions) {
-        try {
-            URL url = new URL("https://api.themoviedb.org/3/movie/" + movieId + "?api_key=" + API_KEY);
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("GET");
-            conn.setRequestProperty("Accept", "application/json");
+    // lists up to ten similar movies from the local index, returns the id of the one picked or 0 to go back
+    private static int showSimilarMovies(int movieId, String title, Scanner scanner) {
+        long started = System.nanoTime();
+        List<SimilarityIndex.Match> matches = SIMILAR.similar(movieId, 10);
+        double millis = (System.nanoTime() - started) / 1_000_000.0;
 
-            if (conn.getResponseCode() == 200) {
-                BufferedReader in = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-                String inputLine;
-                StringBuilder response = new StringBuilder();
+        ConsoleUtils.clearConsole();
+        System.out.println("\nMovies Similar to " + title);
+        if (matches.isEmpty()) {
+            System.out.println(
+                SIMILAR.knows(movieId)
+                    ? "\nNo similar movies yet. Browse a few more lists to grow the index."
+                    : "\nStill indexing this movie, try again in a moment."
+            );
+            System.out.println("\nPress Enter to go back");
+            scanner.nextLine();
+            return 0;
+        }
+
+        for (int i = 0; i < matches.size(); i++) {
+            SimilarityIndex.Match match = matches.get(i);
+            String year = match.year > 0 ? String.valueOf(match.year) : "unknown";
+            int percent = Math.round(match.similarity * 100);
+            String stats = "( " + match.vote + " |  " + year + ") " + percent + "% match";
+            System.out.println("\n" + (i + 1) + ". \u001B[32m" + match.title + "\u001B[0m " + stats);
+        }
+        System.out.println(String.format("\nAnswered locally in %.3f ms", millis));
+
+        System.out.println("\nSelect a movie number to view details\nEnter 0 to go back");
+        System.out.print("\nOption: ");
+        int selection = scanner.nextInt();
+        scanner.nextLine();
+        return selection > 0 && selection <= matches.size() ? matches.get(selection - 1).movieId : 0;
+    }
 
-                while ((inputLine = in.readLine()) != null) {
-                    response.append(inputLine);
+    // the recommendations lean towards the user's taste from the first screen on,
+    // so the account lists are read once in the background instead of waiting for the user to open them
+    private static void startRecommendationSeeding() {
+        Thread seeding = new Thread(
+            () -> {
+                try {
+                    // a breaker of its own, so a failed startup read never opens the ones guarding the account screens
+                    JSONArray favorites = CLIENT.fetchJson("seeding", FAVORITES_URL, true).getJSONArray("results");
+                    SIMILAR.observe(favorites);
+                    seedFromFavorites(favorites);
+                    JSONArray rated = CLIENT.fetchJson("seeding", RATED_MOVIES_URL, true).getJSONArray("results");
+                    SIMILAR.observe(rated);
+                    seedFromRatings(rated);
+                } catch (IOException | JSONException e) {
+                    // the lists are seeded again whenever the user opens them
                 }
-                in.close();
+            },
+            "recommendation-seeding"
+        );
+        seeding.setDaemon(true);
+        seeding.start();
+    }
 
-                JSONObject movieDetails = new JSONObject(response.toString());
-                showMovieDetails(movieDetails, scanner, previousMenu, showActions);
-            } else {
-                System.out.println("Error: Unable to fetch movie details. Response code: " + conn.getResponseCode());
-            }
-            conn.disconnect();
-        } catch (IOException e) {
-            e.printStackTrace();
+    // only called with freshly fetched lists, they replace the seeds so changes made outside this app are picked up
+    private static void seedFromFavorites(JSONArray favorites) {
+        List<Integer> movieIds = new ArrayList<>();
+        for (int i = 0; i < favorites.length(); i++) {
+            movieIds.add(favorites.getJSONObject(i).getInt("id"));
         }
+        SIMILAR.replaceFavoriteSeeds(movieIds);
     }
 
-    private static void updateWatchlist(int movieId, boolean add) {
-        try {
-            URL url = new URL(ADD_WATCHLIST_URL);
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("POST");
-            conn.setRequestProperty("Authorization", "Bearer " + ACCESS_TOKEN);
-            conn.setRequestProperty("Content-Type", "application/json");
-            conn.setDoOutput(true);
+    private static void seedFromRatings(JSONArray rated) {
+        Map<Integer, Double> ratings = new HashMap<>();
+        for (int i = 0; i < rated.length(); i++) {
+            JSONObject movie = rated.getJSONObject(i);
+            ratings.put(movie.getInt("id"), movie.getDouble("rating"));
+        }
+        SIMILAR.replaceRatingSeeds(ratings);
+    }
 
-            String jsonInputString = "{\"media_type\": \"movie\", \"media_id\": " + movieId + ", \"watchlist\": " + add + "}";
+    // cast, crew, trailers, certification and streaming providers, all from one request (or none if already cached)
+    private static void showExtendedDetails(int movieId, String title, Scanner scanner) {
+        ResilientClient.Response response = DETAILS.get(movieId, EXTENDED_VIEW);
+        ConsoleUtils.clearConsole();
+        if (response.body == null) {
+            System.out.println("Error: Unable to fetch extended details. " + response.error);
+            pauseForMessage();
+            return;
+        }
+
+        JSONObject movie = response.body;
+        System.out.println("\nExtended Details - " + title);
+        if (response.stale) {
+            System.out.println("\u001B[33mTMDB is unreachable, showing saved details. Refreshing in the background.\u001B[0m");
+        }
 
-            try (OutputStream os = conn.getOutputStream()) {
-                byte[] input = jsonInputString.getBytes("utf-8");
-                os.write(input, 0, input.length);
+        JSONObject credits = movie.optJSONObject("credits");
+        if (credits != null) {
+            JSONArray directors = new JSONArray();
+            JSONArray crew = credits.getJSONArray("crew");
+            for (int i = 0; i < crew.length(); i++) {
+                if (crew.getJSONObject(i).optString("job").equals("Director")) {
+                    directors.put(crew.getJSONObject(i));
+                }
             }
+            System.out.println("\nDirected by: " + joinNames(directors, "name", 3));
 
-            int responseCode = conn.getResponseCode();
-            if (responseCode == HttpURLConnection.HTTP_OK || responseCode == HttpURLConnection.HTTP_CREATED) {
-                String action = add ? "added to" : "removed from";
-                System.out.println("Movie successfully " + action + " your watchlist.");
+            System.out.println("\nCast");
+            JSONArray cast = credits.getJSONArray("cast");
+            for (int i = 0; i < Math.min(10, cast.length()); i++) {
+                JSONObject member = cast.getJSONObject(i);
+                System.out.println(" " + member.getString("name") + " as " + member.optString("character", "unknown"));
+            }
+        }
 
-                // add a brief pause to let the user see the success message before the screen clears
-                try {
-                    Thread.sleep(2000); // delay for 2 seconds
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
+        // certifications are listed per country, each with one entry per release type
+        JSONObject releaseDates = movie.optJSONObject("release_dates");
+        if (releaseDates != null) {
+            JSONArray countries = releaseDates.getJSONArray("results");
+            for (int i = 0; i < countries.length(); i++) {
+                if (countries.getJSONObject(i).getString("iso_3166_1").equals(WATCH_REGION)) {
+                    JSONArray releases = countries.getJSONObject(i).getJSONArray("release_dates");
+                    String certification = joinNames(releases, "certification", 1);
+                    if (!certification.isEmpty()) {
+                        System.out.println("\nCertification (" + WATCH_REGION + "): " + certification);
+                    }
                 }
-            } else {
-                String action = add ? "add" : "remove";
-                System.out.println("Failed to " + action + " movie to watchlist. Response code: " + responseCode);
             }
+        }
 
-            conn.disconnect();
-        } catch (IOException e) {
-            e.printStackTrace();
+        JSONObject videos = movie.optJSONObject("videos");
+        if (videos != null) {
+            System.out.println("\nTrailers");
+            JSONArray results = videos.getJSONArray("results");
+            int shown = 0;
+            for (int i = 0; i < results.length() && shown < 3; i++) {
+                JSONObject video = results.getJSONObject(i);
+                if (video.optString("site").equals("YouTube") && video.optString("type").equals("Trailer")) {
+                    System.out.println(" " + video.optString("name") + ": https://www.youtube.com/watch?v=" + video.getString("key"));
+                    shown++;
+                }
+            }
+            if (shown == 0) {
+                System.out.println(" No trailers available.");
+            }
         }
-    }
 
-    private static void updateFavorites(int movieId, boolean isAdding) {
-        try {
-            URL url = new URL(ADD_FAVORITES_URL);
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("POST");
-            conn.setRequestProperty("Authorization", "Bearer " + ACCESS_TOKEN);
-            conn.setRequestProperty("Content-Type", "application/json");
-            conn.setDoOutput(true);
+        JSONObject providers = movie.optJSONObject("watch/providers");
+        JSONObject region = providers == null ? null : providers.getJSONObject("results").optJSONObject(WATCH_REGION);
+        System.out.println("\nWhere to Watch (" + WATCH_REGION + ")");
+        if (region == null) {
+            System.out.println(" Not available in this region.");
+        } else {
+            String[][] kinds = { { "flatrate", "Stream" }, { "rent", "Rent" }, { "buy", "Buy" } };
+            for (String[] kind : kinds) {
+                JSONArray offers = region.optJSONArray(kind[0]);
+                if (offers != null) {
+                    System.out.println(" " + kind[1] + ": " + joinNames(offers, "provider_name", 5));
+                }
+            }
+        }
 
-            String jsonInputString = "{\"media_type\": \"movie\", \"media_id\": " + movieId + ", \"favorite\": " + isAdding + "}";
+        System.out.println("\nPress Enter to go back");
+        scanner.nextLine();
+    }
 
-            try (OutputStream os = conn.getOutputStream()) {
-                byte[] input = jsonInputString.getBytes("utf-8");
-                os.write(input, 0, input.length);
+    // comma separated values of 'field' for the first 'limit' entries that have one
+    private static String joinNames(JSONArray entries, String field, int limit) {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < entries.length() && names.size() < limit; i++) {
+            String name = entries.getJSONObject(i).optString(field, "");
+            if (!name.isEmpty()) {
+                names.add(name);
             }
+        }
+        return String.join(", ", names);
+    }
 
-            int responseCode = conn.getResponseCode();
-            if (responseCode == HttpURLConnection.HTTP_OK || responseCode == HttpURLConnection.HTTP_CREATED) {
-                String action = isAdding ? "added to" : "removed from";
-                System.out.println("Movie successfully " + action + " your favorites.");
-
-                // add a brief pause to let the user see the success message before the screen clears
-                try {
-                    Thread.sleep(2000); // delay for 2 seconds
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                }
-            } else {
-                String action = isAdding ? "add" : "remove";
-                System.out.println("Failed to " + action + " movie to favorites. Response code: " + responseCode);
+    // batches the extended details of the entries around the one just opened,
+    // so moving to the next or previous movie in the list is served from the cache
+    private static void prefetchNeighbors(JSONArray results, int index) {
+        List<Integer> neighbors = new ArrayList<>();
+        for (int i = index - PREFETCH_NEIGHBORS; i <= index + PREFETCH_NEIGHBORS; i++) {
+            if (i != index && i >= 0 && i < results.length()) {
+                neighbors.add(results.getJSONObject(i).getInt("id"));
             }
+        }
+        DETAILS.prefetch(neighbors, EXTENDED_VIEW);
+    }
 
-            conn.disconnect();
-        } catch (IOException e) {
-            e.printStackTrace();
+    private static void fetchAndShowMovieDetails(int movieId, Scanner scanner, String previousMenu, boolean showActions) {
+        ResilientClient.Response response = DETAILS.get(movieId, DETAILS_VIEW);
+
+        if (response.body != null) {
+            SIMILAR.observe(response.body);
+            showMovieDetails(response.body, scanner, previousMenu, showActions, response.stale);
+        } else {
+            System.out.println("Error: Unable to fetch movie details. " + response.error);
+            pauseForMessage();
         }
     }
 
-    private static void updateRating(int movieId, Double ratingValue) {
-        try {
-            URL url = new URL("https://api.themoviedb.org/3/movie/" + movieId + "/rating?api_key=" + ACCESS_TOKEN);
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+    // returns whether tmdb accepted the change
+    private static boolean updateWatchlist(int movieId, boolean add) {
+        String jsonInputString = "{\"media_type\": \"movie\", \"media_id\": " + movieId + ", \"watchlist\": " + add + "}";
+        ResilientClient.Response response = CLIENT.send("update-watchlist", "POST", ADD_WATCHLIST_URL, jsonInputString);
 
-            // set request properties before opening the connection
-            conn.setRequestProperty("Authorization", "Bearer " + ACCESS_TOKEN);
-            conn.setRequestProperty("Content-Type", "application/json");
+        if (response.body != null) {
+            String action = add ? "added to" : "removed from";
+            System.out.println("Movie successfully " + action + " your watchlist.");
+        } else {
+            String action = add ? "add" : "remove";
+            System.out.println("Failed to " + action + " movie to watchlist. " + response.error);
+        }
+        pauseForMessage();
+        return response.body != null;
+    }
 
-            if (ratingValue != null) {
-                conn.setRequestMethod("POST");
-                conn.setDoOutput(true);
+    private static boolean updateFavorites(int movieId, boolean isAdding) {
+        String jsonInputString = "{\"media_type\": \"movie\", \"media_id\": " + movieId + ", \"favorite\": " + isAdding + "}";
+        ResilientClient.Response response = CLIENT.send("update-favorites", "POST", ADD_FAVORITES_URL, jsonInputString);
 
-                String jsonInputString = "{\"value\":" + ratingValue + "}";
-                try (OutputStream os = conn.getOutputStream()) {
-                    byte[] input = jsonInputString.getBytes("utf-8");
-                    os.write(input, 0, input.length);
-                }
-            } else {
-                conn.setRequestMethod("DELETE");
-            }
+        if (response.body != null) {
+            String action = isAdding ? "added to" : "removed from";
+            System.out.println("Movie successfully " + action + " your favorites.");
+        } else {
+            String action = isAdding ? "add" : "remove";
+            System.out.println("Failed to " + action + " movie to favorites. " + response.error);
+        }
+        pauseForMessage();
+        return response.body != null;
+    }
 
-            int responseCode = conn.getResponseCode();
-            if (responseCode == HttpURLConnection.HTTP_OK || responseCode == HttpURLConnection.HTTP_CREATED) {
-                String action = ratingValue != null ? "submitted" : "removed";
-                System.out.println("Rating successfully " + action + ".");
+    private static boolean updateRating(int movieId, Double ratingValue) {
+        String url = "https://api.themoviedb.org/3/movie/" + movieId + "/rating?api_key=" + ACCESS_TOKEN;
 
-                // add a brief pause to let the user see the success message before the screen clears
-                try {
-                    Thread.sleep(2000); // delay for 2 seconds
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                }
-            } else {
-                String action = ratingValue != null ? "submit" : "remove";
-                System.out.println("Failed to " + action + " rating. Response code: " + responseCode);
+        // posting a value sets the rating, deleting removes it
+        ResilientClient.Response response = ratingValue != null
+            ? CLIENT.send("rating", "POST", url, "{\"value\":" + ratingValue + "}")
+            : CLIENT.send("rating", "DELETE", url, null);
+
+        if (response.body != null) {
+            String action = ratingValue != null ? "submitted" : "removed";
+            System.out.println("Rating successfully " + action + ".");
+        } else {
+            String action = ratingValue != null ? "submit" : "remove";
+            System.out.println("Failed to " + action + " rating. " + response.error);
+        }
+        pauseForMessage();
+        return response.body != null;
+    }
+
+    // add a brief pause to let the user see the message before the screen clears
+    private static void pauseForMessage() {
+        try {
+            Thread.sleep(2000); // delay for 2 seconds
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // tells the user the list below is a saved copy because tmdb could not be reached in time
+    private static void printStaleNotice(ResilientClient.Response response) {
+        if (response.stale) {
+            long minutes = TimeUnit.MILLISECONDS.toMinutes(System.currentTimeMillis() - response.fetchedAt);
+            System.out.println(
+                "\u001B[33mTMDB is unreachable, showing results saved " + minutes + " min ago. Refreshing in the background.\u001B[0m"
+            );
+        }
+    }
+
+    // queues the posters of a listing for download so they are usually cached by the time a movie is opened
+    private static void prefetchPosters(JSONArray results) {
+        if (IMAGE_MODE == TerminalImages.Mode.NONE) {
+            return;
+        }
+        for (int i = 0; i < results.length(); i++) {
+            String url = posterUrl(results.getJSONObject(i));
+            if (url != null) {
+                IMAGES.request(url);
             }
+        }
+    }
 
-            conn.disconnect();
-        } catch (IOException e) {
-            e.printStackTrace();
+    // draws the poster only if it is already cached, a missing poster is fetched in the background
+    // and simply shows up the next time this screen is drawn
+    private static void showPoster(JSONObject movie) {
+        String url = IMAGE_MODE == TerminalImages.Mode.NONE ? null : posterUrl(movie);
+        Path poster = url == null ? null : IMAGES.getNow(url);
+        String rendered = poster == null ? null : TerminalImages.render(poster, IMAGE_MODE, POSTER_COLUMNS);
+        if (rendered != null) {
+            System.out.print("\n" + rendered);
         }
     }
 
-    // method to truncate the overview
-    private static String truncateOverview(String overview, int maxLength) {
-        if (overview.length() <= maxLength) {
-            return overview; // return full overview if it's within the limit
+    // falls back to the backdrop for the few movies that have no poster
+    private static String posterUrl(JSONObject movie) {
+        int pixels = IMAGE_MODE == TerminalImages.Mode.SIXEL ? POSTER_COLUMNS * TerminalImages.PIXELS_PER_COLUMN : POSTER_COLUMNS;
+        String poster = movie.optString("poster_path", "");
+        if (!poster.isEmpty()) {
+            return imageUrl(poster, POSTER_WIDTHS, pixels);
+        }
+        String backdrop = movie.optString("backdrop_path", "");
+        return backdrop.isEmpty() ? null : imageUrl(backdrop, BACKDROP_WIDTHS, pixels);
+    }
+
+    private static String imageUrl(String path, int[] widths, int pixels) {
+        for (int width : widths) {
+            if (width >= pixels) {
+                return IMAGE_BASE_URL + "w" + width + path;
+            }
+        }
+        return IMAGE_BASE_URL + "original" + path;
+    }
+
+    // starts the background collector on a daemon thread so it never keeps the jvm alive after 'exit'
+    // the first run happens right away, then once every SNAPSHOT_INTERVAL_MINUTES while the cli is open
+    private static void startSnapshotCollector() {
+        ScheduledExecutorService collector = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "popularity-snapshots");
+            thread.setDaemon(true);
+            return thread;
+        });
+        collector.scheduleAtFixedRate(Main::collectSnapshot, 0, SNAPSHOT_INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    private static void collectSnapshot() {
+        try {
+            // concatenate the pages in order so the position in 'ranked' is the popularity rank
+            JSONArray ranked = new JSONArray();
+            for (int page = 1; page <= SNAPSHOT_PAGES; page++) {
+                String url = DISCOVER_URL.replace("page=1", "page=" + page) + "&api_key=" + API_KEY;
+                // a breaker of its own, so a failed run never opens the discover screen's breaker or uses up its probe
+                JSONObject json = CLIENT.fetchJson("discover-snapshots", url, false);
+                JSONArray results = json.getJSONArray("results");
+                for (int i = 0; i < results.length(); i++) {
+                    ranked.put(results.getJSONObject(i));
+                }
+            }
+            SNAPSHOTS.recordSnapshot(Instant.now().getEpochSecond(), ranked);
+        } catch (IOException | RuntimeException e) {
+            // the collector runs behind the menu, so a failed run is silently retried on the next tick
+            // anything escaping here would cancel every later run of scheduleAtFixedRate
+        }
+    }
+
+    private static String sha256(byte[] bytes) {
+        try {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(bytes)) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every jvm is required to ship sha-256
+        }
+    }
+
+    // method to truncate the overview
+    private static String truncateOverview(String overview, int maxLength) {
+        if (overview.length() <= maxLength) {
+            return overview; // return full overview if it's within the limit
+        }
+        return overview.substring(0, maxLength) + "..."; // truncate and append ellipsis
+    }
+
+    // append-only, delta-compressed time series of the discover rankings
+    // every snapshot only stores the movies whose rank, vote average or title changed since the previous one,
+    // so a run over 100 mostly stable movies costs a few hundred bytes instead of the whole json response
+    //
+    // file layout: a 4 byte magic header followed by records of [int length][payload]
+    // payload: [long epoch seconds][varint change count] then per change, sorted by movie id:
+    // [varint id delta][byte flags][varint rank]? [varint vote * 1000]? [varint length + utf-8 title]?
+    public static class PopularitySnapshotStore {
+
+        private static final int MAGIC = 0x504f5031; // "POP1"
+        private static final int FLAG_RANK = 1;
+        private static final int FLAG_VOTE = 2;
+        private static final int FLAG_TITLE = 4;
+
+        private final Path file;
+
+        // state after replaying every record: movie id -> {rank, vote * 1000}, a rank of 0 means off the chart
+        private final Map<Integer, int[]> current = new HashMap<>();
+        private final Map<Integer, String> titles = new HashMap<>();
+
+        // per-movie index of the points where something changed, so queries never rescan the file
+        private final Map<Integer, Series> index = new HashMap<>();
+        private long firstSnapshot = -1;
+        private int snapshotCount = 0;
+        private int worstRank = 0;
+        private boolean loaded = false;
+
+        public PopularitySnapshotStore(Path file) {
+            this.file = file;
+        }
+
+        public synchronized void load() throws IOException {
+            if (loaded) {
+                return;
+            }
+            if (!Files.exists(file)) {
+                loaded = true;
+                return;
+            }
+
+            // start from a clean slate, a failed earlier attempt may have replayed part of the file
+            current.clear();
+            titles.clear();
+            index.clear();
+            firstSnapshot = -1;
+            snapshotCount = 0;
+            worstRank = 0;
+
+            long fileSize = Files.size(file);
+            long goodLength = 0;
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                if (fileSize >= 4) {
+                    if (in.readInt() != MAGIC) {
+                        throw new IOException("Not a popularity snapshot file: " + file);
+                    }
+                    goodLength = 4;
+                    while (goodLength + 4 <= fileSize) {
+                        // a length that runs past the end of the file can only come from a torn or garbage tail
+                        int length = in.readInt();
+                        if (length <= 0 || length > fileSize - goodLength - 4) {
+                            break;
+                        }
+                        byte[] payload = new byte[length];
+                        in.readFully(payload);
+                        if (!isWellFormed(ByteBuffer.wrap(payload))) {
+                            break;
+                        }
+                        apply(ByteBuffer.wrap(payload));
+                        goodLength += 4 + length;
+                    }
+                }
+            }
+
+            // a record cut short or garbled by a crash mid-append is dropped, so the next append starts on a clean boundary
+            if (fileSize > goodLength) {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    channel.truncate(goodLength);
+                }
+            }
+            loaded = true;
+        }
+
+        // 'ranked' holds the discover results in popularity order, the first entry being rank 1
+        // returns false when nothing changed since the previous snapshot, in which case nothing is written
+        public synchronized boolean recordSnapshot(long epochSeconds, JSONArray ranked) throws IOException {
+            load();
+
+            TreeMap<Integer, int[]> changes = new TreeMap<>();
+            Map<Integer, String> newTitles = new HashMap<>();
+            Set<Integer> seen = new HashSet<>();
+            for (int i = 0; i < ranked.length(); i++) {
+                JSONObject movie = ranked.getJSONObject(i);
+                int id = movie.getInt("id");
+                if (!seen.add(id)) {
+                    continue; // a movie can shift onto the next page while we are paging through the results
+                }
+                int rank = i + 1;
+                int vote = (int) Math.round(movie.optDouble("vote_average", 0) * 1000);
+                String title = movie.optString("title", "");
+                int[] previous = current.get(id);
+
+                int flags = 0;
+                if (previous == null || previous[0] != rank) {
+                    flags |= FLAG_RANK;
+                }
+                if (previous == null || previous[1] != vote) {
+                    flags |= FLAG_VOTE;
+                }
+                if (!title.equals(titles.get(id))) {
+                    flags |= FLAG_TITLE;
+                    newTitles.put(id, title);
+                }
+                if (flags != 0) {
+                    changes.put(id, new int[] { flags, rank, vote });
+                }
+            }
+            for (Map.Entry<Integer, int[]> entry : current.entrySet()) {
+                if (entry.getValue()[0] != 0 && !seen.contains(entry.getKey())) {
+                    changes.put(entry.getKey(), new int[] { FLAG_RANK, 0, 0 });
+                }
+            }
+            if (changes.isEmpty()) {
+                return false;
+            }
+
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            payload.write(ByteBuffer.allocate(8).putLong(epochSeconds).array());
+            writeVarint(payload, changes.size());
+            int previousId = 0;
+            for (Map.Entry<Integer, int[]> entry : changes.entrySet()) {
+                int[] change = entry.getValue();
+                writeVarint(payload, entry.getKey() - previousId);
+                previousId = entry.getKey();
+                payload.write(change[0]);
+                if ((change[0] & FLAG_RANK) != 0) {
+                    writeVarint(payload, change[1]);
+                }
+                if ((change[0] & FLAG_VOTE) != 0) {
+                    writeVarint(payload, change[2]);
+                }
+                if ((change[0] & FLAG_TITLE) != 0) {
+                    byte[] title = newTitles.get(entry.getKey()).getBytes(StandardCharsets.UTF_8);
+                    writeVarint(payload, title.length);
+                    payload.write(title);
+                }
+            }
+
+            byte[] bytes = payload.toByteArray();
+            Files.createDirectories(file.getParent());
+            try (
+                FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)
+            ) {
+                ByteBuffer record = ByteBuffer.allocate((channel.size() == 0 ? 4 : 0) + 4 + bytes.length);
+                if (channel.size() == 0) {
+                    record.putInt(MAGIC);
+                }
+                record.putInt(bytes.length).put(bytes).flip();
+                while (record.hasRemaining()) {
+                    channel.write(record);
+                }
+            }
+
+            // replaying our own record keeps the in-memory index on exactly the same code path as load()
+            apply(ByteBuffer.wrap(bytes));
+            return true;
+        }
+
+        public synchronized int snapshotCount() {
+            return snapshotCount;
+        }
+
+        public synchronized String title(int movieId) {
+            return titles.getOrDefault(movieId, "Unknown movie");
+        }
+
+        // every point where the rank or vote average of the movie changed, oldest first
+        public synchronized List<Point> history(int movieId) {
+            List<Point> points = new ArrayList<>();
+            Series series = index.get(movieId);
+            if (series != null) {
+                for (int i = 0; i < series.size; i++) {
+                    points.add(new Point(series.times[i], series.ranks[i], series.votes[i] / 1000.0));
+                }
+            }
+            return points;
+        }
+
+        // movies on the chart right now, ordered by how many places they climbed since 'sinceEpochSeconds'
+        // movies that were not on the chart back then are counted as climbing from just below the worst rank seen
+        public synchronized List<Riser> biggestRisers(long sinceEpochSeconds, int limit) {
+            List<Riser> risers = new ArrayList<>();
+            if (snapshotCount == 0) {
+                return risers;
+            }
+            long baseline = Math.max(sinceEpochSeconds, firstSnapshot);
+
+            for (Map.Entry<Integer, int[]> entry : current.entrySet()) {
+                int[] now = entry.getValue();
+                if (now[0] == 0) {
+                    continue;
+                }
+                Series series = index.get(entry.getKey());
+                int at = series.indexAt(baseline);
+                int fromRank = at < 0 ? 0 : series.ranks[at];
+                int fromVote = at < 0 ? now[1] : series.votes[at];
+                int climbed = (fromRank == 0 ? worstRank + 1 : fromRank) - now[0];
+                if (climbed > 0) {
+                    String title = titles.get(entry.getKey());
+                    risers.add(new Riser(entry.getKey(), title, fromRank, now[0], climbed, fromVote / 1000.0, now[1] / 1000.0));
+                }
+            }
+
+            risers.sort((a, b) -> a.climbed != b.climbed ? Integer.compare(b.climbed, a.climbed) : Integer.compare(a.toRank, b.toRank));
+            return risers.size() > limit ? new ArrayList<>(risers.subList(0, limit)) : risers;
+        }
+
+        // walks a record the same way apply() does without touching any state,
+        // so a zero-filled or garbage record is rejected before it can corrupt the index
+        private static boolean isWellFormed(ByteBuffer payload) {
+            try {
+                payload.getLong();
+                int changes = readVarint(payload);
+                if (changes <= 0) {
+                    return false;
+                }
+                for (int i = 0; i < changes; i++) {
+                    readVarint(payload);
+                    int flags = payload.get();
+                    if (flags == 0 || (flags & ~(FLAG_RANK | FLAG_VOTE | FLAG_TITLE)) != 0) {
+                        return false;
+                    }
+                    if ((flags & FLAG_RANK) != 0) {
+                        readVarint(payload);
+                    }
+                    if ((flags & FLAG_VOTE) != 0) {
+                        readVarint(payload);
+                    }
+                    if ((flags & FLAG_TITLE) != 0) {
+                        int length = readVarint(payload);
+                        if (length < 0 || length > payload.remaining()) {
+                            return false;
+                        }
+                        payload.position(payload.position() + length);
+                    }
+                }
+                return !payload.hasRemaining();
+            } catch (BufferUnderflowException e) {
+                return false;
+            }
+        }
+
+        private void apply(ByteBuffer payload) {
+            long time = payload.getLong();
+            if (firstSnapshot < 0) {
+                firstSnapshot = time;
+            }
+            snapshotCount++;
+
+            int changes = readVarint(payload);
+            int id = 0;
+            for (int i = 0; i < changes; i++) {
+                id += readVarint(payload);
+                int flags = payload.get();
+                int[] state = current.computeIfAbsent(id, key -> new int[2]);
+                if ((flags & FLAG_RANK) != 0) {
+                    state[0] = readVarint(payload);
+                    worstRank = Math.max(worstRank, state[0]);
+                }
+                if ((flags & FLAG_VOTE) != 0) {
+                    state[1] = readVarint(payload);
+                }
+                if ((flags & FLAG_TITLE) != 0) {
+                    byte[] title = new byte[readVarint(payload)];
+                    payload.get(title);
+                    titles.put(id, new String(title, StandardCharsets.UTF_8));
+                }
+                if ((flags & (FLAG_RANK | FLAG_VOTE)) != 0) {
+                    index.computeIfAbsent(id, key -> new Series()).add(time, state[0], state[1]);
+                }
+            }
+        }
+
+        private static void writeVarint(ByteArrayOutputStream out, int value) {
+            while ((value & ~0x7F) != 0) {
+                out.write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.write(value);
+        }
+
+        private static int readVarint(ByteBuffer in) {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = in.get();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+        }
+
+        // column-oriented growable arrays, a few bytes per point instead of an object per point
+        private static class Series {
+
+            long[] times = new long[4];
+            int[] ranks = new int[4];
+            int[] votes = new int[4];
+            int size = 0;
+
+            void add(long time, int rank, int vote) {
+                if (size == times.length) {
+                    times = Arrays.copyOf(times, size * 2);
+                    ranks = Arrays.copyOf(ranks, size * 2);
+                    votes = Arrays.copyOf(votes, size * 2);
+                }
+                times[size] = time;
+                ranks[size] = rank;
+                votes[size] = vote;
+                size++;
+            }
+
+            // index of the last point at or before 'time', or -1 if the movie had not been seen yet
+            int indexAt(long time) {
+                int low = 0;
+                int high = size - 1;
+                while (low <= high) {
+                    int mid = (low + high) >>> 1;
+                    if (times[mid] <= time) {
+                        low = mid + 1;
+                    } else {
+                        high = mid - 1;
+                    }
+                }
+                return high;
+            }
+        }
+
+        public static class Point {
+
+            public final long time;
+            public final int rank;
+            public final double vote;
+
+            Point(long time, int rank, double vote) {
+                this.time = time;
+                this.rank = rank;
+                this.vote = vote;
+            }
+        }
+
+        public static class Riser {
+
+            public final int movieId;
+            public final String title;
+            public final int fromRank; // 0 when the movie was not on the chart at the start of the window
+            public final int toRank;
+            public final int climbed;
+            public final double fromVote;
+            public final double toVote;
+
+            Riser(int movieId, String title, int fromRank, int toRank, int climbed, double fromVote, double toVote) {
+                this.movieId = movieId;
+                this.title = title;
+                this.fromRank = fromRank;
+                this.toRank = toRank;
+                this.climbed = climbed;
+                this.fromVote = fromVote;
+                this.toVote = toVote;
+            }
+        }
+    }
+
+    // every call to tmdb goes through here
+    // each endpoint gets its own circuit breaker: after a few failures in a row we stop calling it for a while
+    // and answer from the last good response saved on disk, marked as stale
+    // whenever a saved copy is served it is also revalidated in the background: a request that ran past the latency
+    // budget simply keeps going, otherwise a refresh is scheduled for as soon as the breaker lets a request through
+    public static class ResilientClient {
+
+        private static final int CONNECT_TIMEOUT_MILLIS = 3000;
+        private static final int READ_TIMEOUT_MILLIS = 10000;
+        private static final long REVALIDATE_DELAY_MILLIS = 5000;
+
+        // saved responses older than this are neither served nor kept, and the folder is trimmed to a size budget
+        private static final long MAX_AGE_MILLIS = TimeUnit.DAYS.toMillis(7);
+        private static final long DISK_BUDGET_BYTES = 20L * 1024 * 1024;
+        private static final int MEMORY_ENTRIES = 200;
+        private static final long PRUNE_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+        private final Path dir;
+        private final long budgetMillis;
+        private final ExecutorService network = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "tmdb-requests");
+            thread.setDaemon(true);
+            return thread;
+        });
+        private final ScheduledExecutorService revalidator = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tmdb-revalidation");
+            thread.setDaemon(true);
+            return thread;
+        });
+        private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+        // the most recently used saved responses, the rest are read back from disk when needed
+        private final Map<String, Response> lastGood = new LinkedHashMap<>(64, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Response> eldest) {
+                return size() > MEMORY_ENTRIES;
+            }
+        };
+        private final AtomicLong lastPrune = new AtomicLong(0);
+
+        // a screen opened again while its previous request is still running joins that request
+        private final Map<String, CompletableFuture<JSONObject>> inFlight = new ConcurrentHashMap<>();
+        private final Set<String> revalidating = ConcurrentHashMap.newKeySet();
+
+        public ResilientClient(Path dir, long budgetMillis) {
+            this.dir = dir;
+            this.budgetMillis = budgetMillis;
+        }
+
+        // never takes longer than the latency budget, falls back to the last good response when there is one
+        public Response get(String endpoint, String url, boolean authorized) {
+            Response saved = lastGood(url);
+            CircuitBreaker breaker = breaker(endpoint);
+
+            CompletableFuture<JSONObject> request = inFlight.get(url);
+            if (request == null) {
+                if (!breaker.allowRequest()) {
+                    String error = "TMDB is unreachable, retrying in " + breaker.secondsUntilRetry() + "s.";
+                    return saved != null ? revalidateLater(breaker, url, authorized, saved) : Response.failed(error);
+                }
+                request = startRequest(breaker, url, authorized);
+            }
+
+            try {
+                return Response.fresh(request.get(budgetMillis, TimeUnit.MILLISECONDS));
+            } catch (TimeoutException e) {
+                // the request keeps running and refreshes the saved copy when it finishes
+                long seconds = TimeUnit.MILLISECONDS.toSeconds(budgetMillis);
+                String error = "TMDB did not respond within " + seconds + " seconds, try again in a moment.";
+                return saved != null ? saved : Response.failed(error);
+            } catch (ExecutionException e) {
+                // a 4xx is tmdb telling us the request itself is wrong, a saved copy would only hide that
+                if (e.getCause() instanceof StatusException && !((StatusException) e.getCause()).isServerError()) {
+                    return Response.rejected(e.getCause().getMessage());
+                }
+                return saved != null ? revalidateLater(breaker, url, authorized, saved) : Response.failed(describe(e.getCause()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return saved != null ? saved : Response.failed("Request interrupted.");
+            }
+        }
+
+        private CompletableFuture<JSONObject> startRequest(CircuitBreaker breaker, String url, boolean authorized) {
+            CompletableFuture<JSONObject> request = inFlight.computeIfAbsent(
+                url,
+                key -> CompletableFuture.supplyAsync(() -> remember(key, call(breaker, "GET", key, authorized, null)), network)
+            );
+            // registered outside computeIfAbsent: a request that already failed runs this right away,
+            // and removing from inside the mapping function would throw and leave the dead request in the map
+            request.whenComplete((body, error) -> inFlight.remove(url, request));
+            return request;
+        }
+
+        // schedules one background refresh of a saved copy we are about to serve, unless one is already pending
+        private Response revalidateLater(CircuitBreaker breaker, String url, boolean authorized, Response saved) {
+            if (revalidating.add(url)) {
+                long delay = Math.max(REVALIDATE_DELAY_MILLIS, breaker.millisUntilRetry());
+                revalidator.schedule(() -> revalidate(breaker, url, authorized), delay, TimeUnit.MILLISECONDS);
+            }
+            return saved;
+        }
+
+        // waits for the breaker to allow a request (the half open probe counts), then refreshes the saved copy
+        private void revalidate(CircuitBreaker breaker, String url, boolean authorized) {
+            CompletableFuture<JSONObject> request = inFlight.get(url);
+            if (request == null && !breaker.allowRequest()) {
+                long delay = Math.max(REVALIDATE_DELAY_MILLIS, breaker.millisUntilRetry());
+                revalidator.schedule(() -> revalidate(breaker, url, authorized), delay, TimeUnit.MILLISECONDS);
+                return;
+            }
+            if (request == null) {
+                request = startRequest(breaker, url, authorized);
+            }
+            request.whenComplete((body, error) -> revalidating.remove(url));
+        }
+
+        // writes are never answered from a saved copy, they either reach tmdb within the budget or report why not
+        public Response send(String endpoint, String method, String url, String body) {
+            CircuitBreaker breaker = breaker(endpoint);
+            if (!breaker.allowRequest()) {
+                return Response.failed("TMDB is unreachable, retrying in " + breaker.secondsUntilRetry() + "s.");
+            }
+            CompletableFuture<JSONObject> request = CompletableFuture.supplyAsync(() -> call(breaker, method, url, true, body), network);
+            try {
+                return Response.fresh(request.get(budgetMillis, TimeUnit.MILLISECONDS));
+            } catch (TimeoutException e) {
+                return Response.failed("TMDB did not respond in time, the change may still be applied.");
+            } catch (ExecutionException e) {
+                return Response.failed(describe(e.getCause()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return Response.failed("Request interrupted.");
+            }
+        }
+
+        // blocking variant for background work that has no screen waiting on it
+        public JSONObject fetchJson(String endpoint, String url, boolean authorized) throws IOException {
+            CircuitBreaker breaker = breaker(endpoint);
+            if (!breaker.allowRequest()) {
+                throw new IOException("Circuit open for " + endpoint);
+            }
+            try {
+                return remember(url, call(breaker, "GET", url, authorized, null));
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+            }
+        }
+
+        // the saved copy of a url, without touching the network, null when there is none or it is too old
+        public Response saved(String url) {
+            return lastGood(url);
+        }
+
+        // for callers that served something pieced together from saved copies instead of this exact url
+        public void refreshLater(String endpoint, String url, boolean authorized) {
+            revalidateLater(breaker(endpoint), url, authorized, null);
+        }
+
+        private JSONObject call(CircuitBreaker breaker, String method, String url, boolean authorized, String body) {
+            try {
+                JSONObject json = execute(method, url, authorized, body);
+                breaker.recordSuccess();
+                return json;
+            } catch (StatusException e) {
+                // tmdb answering with a 4xx is still tmdb being up
+                if (e.isServerError()) {
+                    breaker.recordFailure();
+                } else {
+                    breaker.recordSuccess();
+                }
+                throw new CompletionException(e);
+            } catch (IOException | JSONException e) {
+                breaker.recordFailure();
+                throw new CompletionException(e);
+            }
+        }
+
+        private static JSONObject execute(String method, String url, boolean authorized, String body) throws IOException {
+            // this part opens a connection to the api using HttpURLConnection
+            // the timeouts make sure a dead network fails the request instead of hanging it forever
+            // the Accept header tells the server that we want the response in json format
+            HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+            try {
+                conn.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+                conn.setReadTimeout(READ_TIMEOUT_MILLIS);
+                conn.setRequestMethod(method);
+                conn.setRequestProperty("Accept", "application/json");
+                if (authorized) {
+                    conn.setRequestProperty("Authorization", "Bearer " + ACCESS_TOKEN);
+                    conn.setRequestProperty("Content-Type", "application/json");
+                }
+                if (body != null) {
+                    conn.setDoOutput(true);
+                    try (OutputStream os = conn.getOutputStream()) {
+                        os.write(body.getBytes(StandardCharsets.UTF_8));
+                    }
+                }
+
+                int responseCode = conn.getResponseCode();
+                if (responseCode != HttpURLConnection.HTTP_OK && responseCode != HttpURLConnection.HTTP_CREATED) {
+                    throw new StatusException(responseCode);
+                }
+                StringBuilder content = new StringBuilder();
+                try (BufferedReader in = new BufferedReader(new InputStreamReader(conn.getInputStream(), StandardCharsets.UTF_8))) {
+                    String inputLine;
+                    while ((inputLine = in.readLine()) != null) {
+                        content.append(inputLine);
+                    }
+                }
+                return new JSONObject(content.toString());
+            } finally {
+                conn.disconnect();
+            }
+        }
+
+        // saved responses are keyed by the sha-256 of their url, which keeps the api key out of the file names
+        // always runs on a background thread, so writing and pruning the saved copies never holds up a screen
+        private JSONObject remember(String url, JSONObject body) {
+            long now = System.currentTimeMillis();
+            synchronized (lastGood) {
+                lastGood.put(url, Response.saved(body, now));
+            }
+            try {
+                Files.createDirectories(dir);
+                Path temp = Files.createTempFile(dir, "response", ".tmp");
+                Files.writeString(temp, new JSONObject().put("fetched_at", now).put("body", body).toString(), StandardCharsets.UTF_8);
+                Files.move(temp, savedFile(url), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException ignored) {
+                // we still have the copy in memory for this session
+            }
+            prune();
+            return body;
+        }
+
+        private Response lastGood(String url) {
+            Response saved;
+            synchronized (lastGood) {
+                saved = lastGood.get(url);
+            }
+            if (saved == null) {
+                saved = readSaved(savedFile(url));
+                if (saved != null) {
+                    synchronized (lastGood) {
+                        lastGood.putIfAbsent(url, saved);
+                    }
+                }
+            }
+            return saved != null && System.currentTimeMillis() - saved.fetchedAt < MAX_AGE_MILLIS ? saved : null;
+        }
+
+        private static Response readSaved(Path file) {
+            if (!Files.exists(file)) {
+                return null;
+            }
+            try {
+                JSONObject saved = new JSONObject(Files.readString(file, StandardCharsets.UTF_8));
+                return Response.saved(saved.getJSONObject("body"), saved.getLong("fetched_at"));
+            } catch (IOException | JSONException e) {
+                return null;
+            }
+        }
+
+        // at most once a minute: drops saved copies past the max age, then the oldest ones until the folder fits the budget
+        private void prune() {
+            long now = System.currentTimeMillis();
+            long last = lastPrune.get();
+            if (now - last < PRUNE_INTERVAL_MILLIS || !lastPrune.compareAndSet(last, now)) {
+                return;
+            }
+            try (Stream<Path> listing = Files.list(dir)) {
+                Map<Path, Long> modified = new HashMap<>();
+                for (Path file : (Iterable<Path>) listing::iterator) {
+                    modified.put(file, Files.getLastModifiedTime(file).toMillis());
+                }
+                List<Path> newestFirst = new ArrayList<>(modified.keySet());
+                newestFirst.sort((a, b) -> Long.compare(modified.get(b), modified.get(a)));
+
+                long total = 0;
+                for (Path file : newestFirst) {
+                    total += Files.size(file);
+                    if (now - modified.get(file) > MAX_AGE_MILLIS || total > DISK_BUDGET_BYTES) {
+                        Files.deleteIfExists(file);
+                    }
+                }
+            } catch (IOException ignored) {
+                // whatever we could not delete now is picked up by the next prune
+            }
+        }
+
+        private Path savedFile(String url) {
+            return dir.resolve(sha256(url.getBytes(StandardCharsets.UTF_8)) + ".json");
+        }
+
+        private CircuitBreaker breaker(String endpoint) {
+            return breakers.computeIfAbsent(endpoint, key -> new CircuitBreaker());
+        }
+
+        private static String describe(Throwable error) {
+            if (error instanceof SocketTimeoutException) {
+                return "TMDB took too long to respond.";
+            }
+            if (error instanceof StatusException) {
+                return error.getMessage();
+            }
+            return "Could not reach TMDB (" + error.getClass().getSimpleName() + ").";
+        }
+
+        public static class Response {
+
+            public final JSONObject body; // null when there was nothing to show
+            public final boolean stale;
+            public final long fetchedAt;
+            public final String error;
+            public final boolean rejected; // tmdb answered with a 4xx, a saved copy must not stand in for it
+
+            private Response(JSONObject body, boolean stale, long fetchedAt, String error, boolean rejected) {
+                this.body = body;
+                this.stale = stale;
+                this.fetchedAt = fetchedAt;
+                this.error = error;
+                this.rejected = rejected;
+            }
+
+            static Response fresh(JSONObject body) {
+                return new Response(body, false, System.currentTimeMillis(), null, false);
+            }
+
+            static Response saved(JSONObject body, long fetchedAt) {
+                return new Response(body, true, fetchedAt, null, false);
+            }
+
+            static Response failed(String error) {
+                return new Response(null, false, 0, error, false);
+            }
+
+            static Response rejected(String error) {
+                return new Response(null, false, 0, error, true);
+            }
+        }
+
+        // closed: requests go through
+        // open: requests are refused until the cool down has passed
+        // half open: a single probe request decides whether we close again or stay open for another cool down
+        private static class CircuitBreaker {
+
+            private static final int FAILURE_THRESHOLD = 3;
+            private static final long COOL_DOWN_MILLIS = 30000;
+
+            private enum State {
+                CLOSED,
+                OPEN,
+                HALF_OPEN
+            }
+
+            private State state = State.CLOSED;
+            private int failures = 0;
+            private long openedAt = 0;
+
+            synchronized boolean allowRequest() {
+                if (state == State.OPEN && System.currentTimeMillis() - openedAt >= COOL_DOWN_MILLIS) {
+                    state = State.HALF_OPEN;
+                    return true;
+                }
+                return state == State.CLOSED;
+            }
+
+            synchronized void recordSuccess() {
+                state = State.CLOSED;
+                failures = 0;
+            }
+
+            synchronized void recordFailure() {
+                failures++;
+                if (state == State.HALF_OPEN || failures >= FAILURE_THRESHOLD) {
+                    state = State.OPEN;
+                    openedAt = System.currentTimeMillis();
+                }
+            }
+
+            synchronized long millisUntilRetry() {
+                return state == State.OPEN ? Math.max(0, COOL_DOWN_MILLIS - (System.currentTimeMillis() - openedAt)) : 0;
+            }
+
+            long secondsUntilRetry() {
+                return TimeUnit.MILLISECONDS.toSeconds(millisUntilRetry());
+            }
+        }
+
+        private static class StatusException extends IOException {
+
+            private static final long serialVersionUID = 1L;
+            private final int code;
+
+            StatusException(int code) {
+                super("Response code: " + code);
+                this.code = code;
+            }
+
+            // 429 counts as a server side problem, hammering tmdb while it rate limits us only makes it worse
+            boolean isServerError() {
+                return code >= 500 || code == 429;
+            }
+        }
+    }
+
+    // movie details with their sub-resources (credits, videos, release dates, watch providers)
+    // the movie and whatever sub-resources a view is missing come back in a single request through append_to_response,
+    // then the response is split so each sub-resource is cached on its own and reused by any view that needs it
+    public static class DetailsCache {
+
+        public enum Part {
+            CREDITS("credits"),
+            VIDEOS("videos"),
+            RELEASE_DATES("release_dates"),
+            WATCH_PROVIDERS("watch/providers");
+
+            final String key;
+
+            Part(String key) {
+                this.key = key;
+            }
+        }
+
+        private static final long TTL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+        private static final int MAX_MOVIES = 100;
+
+        private final ResilientClient client;
+        private final String apiKey;
+        private final Map<String, Cached> parts = new ConcurrentHashMap<>();
+
+        // least recently used movies are dropped together with their parts
+        private final Map<Integer, Cached> movies = Collections.synchronizedMap(
+            new LinkedHashMap<>(64, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, Cached> eldest) {
+                    if (size() <= MAX_MOVIES) {
+                        return false;
+                    }
+                    for (Part part : Part.values()) {
+                        parts.remove(key(eldest.getKey(), part));
+                    }
+                    return true;
+                }
+            }
+        );
+
+        // prefetches run one after another on a single thread so they never compete with the screen the user is on
+        private final ExecutorService prefetcher = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "details-prefetch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        private final Set<Integer> prefetching = ConcurrentHashMap.newKeySet();
+
+        public DetailsCache(ResilientClient client, String apiKey) {
+            this.client = client;
+            this.apiKey = apiKey;
+        }
+
+        // the movie with every part of 'view' attached, served from the cache when nothing is missing
+        public ResilientClient.Response get(int movieId, Set<Part> view) {
+            Set<Part> missing = missing(movieId, view);
+            if (missing == null) {
+                return ResilientClient.Response.fresh(compose(movieId, view));
+            }
+
+            String url = url(movieId, missing);
+            ResilientClient.Response response = client.get("details", url, false);
+            if (response.body == null && !response.rejected) {
+                ResilientClient.Response saved = fromSaved(movieId, view);
+                if (saved != null) {
+                    // nothing was saved under this exact url, so the client did not queue a refresh of it
+                    client.refreshLater("details", url, false);
+                    return saved;
+                }
+            }
+            if (response.body == null) {
+                return response;
+            }
+            split(movieId, response.body, missing, response.fetchedAt);
+            JSONObject movie = compose(movieId, view);
+            return response.stale ? ResilientClient.Response.saved(movie, response.fetchedAt) : ResilientClient.Response.fresh(movie);
+        }
+
+        // warms the cache in the background, one request per movie that is not fully cached yet
+        public void prefetch(List<Integer> movieIds, Set<Part> view) {
+            for (int movieId : movieIds) {
+                Set<Part> missing = missing(movieId, view);
+                if (missing == null || !prefetching.add(movieId)) {
+                    continue;
+                }
+                prefetcher.execute(() -> {
+                    try {
+                        // its own breaker, so failed prefetches never open the one guarding the details screen or eat its probe
+                        JSONObject body = client.fetchJson("details-prefetch", url(movieId, missing), false);
+                        split(movieId, body, missing, System.currentTimeMillis());
+                    } catch (IOException | JSONException e) {
+                        // a failed prefetch just means the screen fetches the movie itself when it is opened
+                    } finally {
+                        prefetching.remove(movieId);
+                    }
+                });
+            }
+        }
+
+        // saved responses are keyed by url, and the url depends on which parts were missing at the time,
+        // so offline the view is pieced back together from whatever this session cached and every saved response for the movie
+        private ResilientClient.Response fromSaved(int movieId, Set<Part> view) {
+            for (int mask = 0; mask < 1 << Part.values().length; mask++) {
+                Set<Part> append = EnumSet.noneOf(Part.class);
+                for (Part part : Part.values()) {
+                    if ((mask & 1 << part.ordinal()) != 0) {
+                        append.add(part);
+                    }
+                }
+                ResilientClient.Response saved = client.saved(url(movieId, append));
+                if (saved != null) {
+                    split(movieId, saved.body, append, saved.fetchedAt);
+                }
+            }
+
+            Cached movie = movies.get(movieId);
+            if (movie == null) {
+                return null;
+            }
+            long oldest = movie.fetchedAt;
+            for (Part part : view) {
+                Cached cached = parts.get(key(movieId, part));
+                if (cached == null) {
+                    return null;
+                }
+                oldest = Math.min(oldest, cached.fetchedAt);
+            }
+            return ResilientClient.Response.saved(compose(movieId, view), oldest);
+        }
+
+        // null when the movie and every part of the view are cached and fresh, otherwise the parts to request
+        // the movie itself always comes with the response, so a missing movie alone means an empty set
+        private Set<Part> missing(int movieId, Set<Part> view) {
+            Set<Part> missing = EnumSet.noneOf(Part.class);
+            for (Part part : view) {
+                if (!isFresh(parts.get(key(movieId, part)))) {
+                    missing.add(part);
+                }
+            }
+            return missing.isEmpty() && isFresh(movies.get(movieId)) ? null : missing;
+        }
+
+        private String url(int movieId, Set<Part> append) {
+            StringBuilder url = new StringBuilder("https://api.themoviedb.org/3/movie/" + movieId + "?api_key=" + apiKey);
+            if (!append.isEmpty()) {
+                // EnumSet iterates in declaration order, so the same view always maps to the same url and saved response
+                url.append("&append_to_response=");
+                url.append(String.join(",", append.stream().map(part -> part.key).toArray(String[]::new)));
+            }
+            return url.toString();
+        }
+
+        // an older copy never replaces a newer one, saved responses can be split in after fresh ones
+        private void split(int movieId, JSONObject body, Set<Part> requested, long fetchedAt) {
+            JSONObject movie = new JSONObject(body.toString());
+            for (Part part : requested) {
+                Object value = movie.remove(part.key);
+                if (value instanceof JSONObject) {
+                    parts.merge(key(movieId, part), new Cached((JSONObject) value, fetchedAt), DetailsCache::newer);
+                }
+            }
+            movies.merge(movieId, new Cached(movie, fetchedAt), DetailsCache::newer);
+        }
+
+        private static Cached newer(Cached a, Cached b) {
+            return b.fetchedAt >= a.fetchedAt ? b : a;
+        }
+
+        private JSONObject compose(int movieId, Set<Part> view) {
+            JSONObject movie = new JSONObject(movies.get(movieId).json.toString());
+            for (Part part : view) {
+                Cached cached = parts.get(key(movieId, part));
+                if (cached != null) {
+                    movie.put(part.key, cached.json);
+                }
+            }
+            return movie;
+        }
+
+        private static String key(int movieId, Part part) {
+            return movieId + ":" + part.key;
+        }
+
+        private static boolean isFresh(Cached cached) {
+            return cached != null && System.currentTimeMillis() - cached.fetchedAt < TTL_MILLIS;
+        }
+
+        private static class Cached {
+
+            final JSONObject json;
+            final long fetchedAt;
+
+            Cached(JSONObject json, long fetchedAt) {
+                this.json = json;
+                this.fetchedAt = fetchedAt;
+            }
+        }
+    }
+
+    // local "similar movies" engine, it never calls the api
+    // every movie we come across (discover, search, the account lists and the details screen) becomes a sparse feature vector:
+    // its genres, a soft release year bucket, a soft vote average bucket and the tf-idf weights of its overview terms
+    // a background thread precomputes the top K neighbors of every movie with a fork-join build,
+    // and publishes them as an immutable snapshot, so answering a query is a map lookup plus a few dot products
+    public static class SimilarityIndex {
+
+        private static final int TOP_K = 20;
+        private static final float GENRE_WEIGHT = 1.0f;
+        private static final float TEXT_WEIGHT = 0.8f;
+        private static final float YEAR_WEIGHT = 0.35f;
+        private static final float VOTE_WEIGHT = 0.25f;
+
+        // how much the user's taste (built from their ratings and favorites) nudges the ranking of neighbors
+        private static final float PROFILE_WEIGHT = 0.3f;
+
+        // incremental refreshes reuse the old idf values, after this much growth everything is rebuilt with fresh ones
+        private static final double REBUILD_GROWTH = 1.25;
+
+        private static final Set<String> STOP_WORDS = new HashSet<>(
+            Arrays.asList(
+                "the", "and", "for", "with", "his", "her", "their", "they", "that", "this", "from", "into", "when", "who", "what",
+                "are", "was", "has", "have", "but", "not", "she", "him", "them", "its", "out", "all", "one", "after", "must", "about"
+            )
+        );
+
+        private final Path file;
+        private final ExecutorService refresher = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "similar-movies");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // everything below is only touched on the refresher thread
+        private final Map<Integer, MovieDoc> docs = new HashMap<>();
+        private final Map<String, Integer> dims = new HashMap<>();
+        private final Map<Integer, Integer> documentFrequency = new HashMap<>();
+        private final Set<Integer> pending = new HashSet<>();
+        private final Map<Integer, Float> favoriteSeeds = new HashMap<>();
+        private final Map<Integer, Float> ratingSeeds = new HashMap<>();
+        private int docsAtLastBuild = 0;
+        private boolean seedsChanged = false;
+
+        // read by the menu thread without locking
+        private volatile Snapshot snapshot = new Snapshot(new HashMap<>(), new HashMap<>(), null, new HashSet<>());
+
+        public SimilarityIndex(Path file) {
+            this.file = file;
+        }
+
+        // reads the movies seen in earlier sessions, then builds the index in the background
+        public void load() {
+            refresher.execute(() -> {
+                if (Files.exists(file)) {
+                    try {
+                        JSONArray saved = new JSONArray(Files.readString(file, StandardCharsets.UTF_8));
+                        for (int i = 0; i < saved.length(); i++) {
+                            add(MovieDoc.fromJson(saved.getJSONObject(i)));
+                        }
+                    } catch (IOException | JSONException e) {
+                        // a damaged corpus only means we start learning from scratch
+                    }
+                }
+                refresh(false);
+            });
+        }
+
+        // accepts both listing entries (genre_ids) and details responses (genres)
+        public void observe(JSONArray movies) {
+            List<MovieDoc> parsed = new ArrayList<>();
+            for (int i = 0; i < movies.length(); i++) {
+                parsed.add(MovieDoc.fromJson(movies.getJSONObject(i)));
+            }
+            refresher.execute(() -> {
+                parsed.forEach(this::add);
+                refresh(true);
+            });
+        }
+
+        public void observe(JSONObject movie) {
+            observe(new JSONArray().put(movie));
+        }
+
+        // favorites count fully, ratings pull towards movies rated above 5.5 and away from the ones below
+        // a movie that is both a favorite and rated contributes both weights, and removing one keeps the other
+        public void seedFavorite(int movieId) {
+            seed(favoriteSeeds, movieId, 1.0f);
+        }
+
+        public void unseedFavorite(int movieId) {
+            unseed(favoriteSeeds, movieId);
+        }
+
+        public void seedRating(int movieId, double rating) {
+            seed(ratingSeeds, movieId, ratingWeight(rating));
+        }
+
+        public void unseedRating(int movieId) {
+            unseed(ratingSeeds, movieId);
+        }
+
+        // a freshly fetched account list is the whole truth, so movies removed from it elsewhere stop counting
+        public void replaceFavoriteSeeds(List<Integer> movieIds) {
+            Map<Integer, Float> weights = new HashMap<>();
+            movieIds.forEach(movieId -> weights.put(movieId, 1.0f));
+            replace(favoriteSeeds, weights);
+        }
+
+        public void replaceRatingSeeds(Map<Integer, Double> ratings) {
+            Map<Integer, Float> weights = new HashMap<>();
+            ratings.forEach((movieId, rating) -> weights.put(movieId, ratingWeight(rating)));
+            replace(ratingSeeds, weights);
+        }
+
+        private static float ratingWeight(double rating) {
+            return (float) ((rating - 5.5) / 4.5);
+        }
+
+        private void seed(Map<Integer, Float> seeds, int movieId, float weight) {
+            refresher.execute(() -> {
+                Float previous = seeds.put(movieId, weight);
+                seedsChanged |= previous == null || previous != weight;
+                refresh(false);
+            });
+        }
+
+        private void unseed(Map<Integer, Float> seeds, int movieId) {
+            refresher.execute(() -> {
+                seedsChanged |= seeds.remove(movieId) != null;
+                refresh(false);
+            });
+        }
+
+        private void replace(Map<Integer, Float> seeds, Map<Integer, Float> weights) {
+            refresher.execute(() -> {
+                if (!seeds.equals(weights)) {
+                    seeds.clear();
+                    seeds.putAll(weights);
+                    seedsChanged = true;
+                }
+                refresh(false);
+            });
+        }
+
+        public boolean knows(int movieId) {
+            return snapshot.neighbors.containsKey(movieId);
+        }
+
+        // neighbors of the movie re-ranked towards the user's taste, skipping what they already rated or liked
+        public List<Match> similar(int movieId, int limit) {
+            Snapshot current = snapshot;
+            Neighbors neighbors = current.neighbors.get(movieId);
+            List<Match> matches = new ArrayList<>();
+            if (neighbors == null) {
+                return matches;
+            }
+            for (int i = 0; i < neighbors.ids.length; i++) {
+                int id = neighbors.ids[i];
+                if (current.seeded.contains(id)) {
+                    continue;
+                }
+                float score = neighbors.scores[i];
+                if (current.profile != null) {
+                    score += PROFILE_WEIGHT * current.profile.dot(current.vectors.get(id).vector);
+                }
+                matches.add(new Match(current.vectors.get(id), neighbors.scores[i], score));
+            }
+            matches.sort((a, b) -> Float.compare(b.rank, a.rank));
+            return matches.size() > limit ? new ArrayList<>(matches.subList(0, limit)) : matches;
+        }
+
+        private void add(MovieDoc doc) {
+            MovieDoc previous = docs.put(doc.id, doc);
+            if (previous != null) {
+                if (previous.sameFeatures(doc)) {
+                    return;
+                }
+                previous.terms.keySet().forEach(term -> documentFrequency.merge(dim("t:" + term), -1, Integer::sum));
+            }
+            doc.terms.keySet().forEach(term -> documentFrequency.merge(dim("t:" + term), 1, Integer::sum));
+            pending.add(doc.id);
+        }
+
+        private void refresh(boolean persist) {
+            if (pending.isEmpty() && !seedsChanged) {
+                return;
+            }
+            Snapshot current = snapshot;
+            boolean rebuild = docs.size() > docsAtLastBuild * REBUILD_GROWTH || current.vectors.isEmpty();
+
+            Map<Integer, Entry> vectors = rebuild ? new HashMap<>() : new HashMap<>(current.vectors);
+            Map<Integer, Neighbors> neighbors = rebuild ? new HashMap<>() : new HashMap<>(current.neighbors);
+            Set<Integer> changed = rebuild ? docs.keySet() : pending;
+            for (int id : changed) {
+                vectors.put(id, new Entry(docs.get(id), vectorize(docs.get(id))));
+            }
+
+            if (!changed.isEmpty()) {
+                Entry[] all = vectors.values().toArray(new Entry[0]);
+                Entry[] fresh = changed.stream().map(vectors::get).toArray(Entry[]::new);
+                if (rebuild) {
+                    ForkJoinPool.commonPool().invoke(new NeighborTask(all, all, neighbors, 0, all.length));
+                    docsAtLastBuild = docs.size();
+                } else {
+                    // new movies get a full neighbor list, existing movies only check whether a new one beats their worst neighbor
+                    Entry[] old = Arrays.stream(all).filter(entry -> !changed.contains(entry.doc.id)).toArray(Entry[]::new);
+                    ForkJoinPool.commonPool().invoke(new NeighborTask(fresh, all, neighbors, 0, fresh.length));
+                    ForkJoinPool.commonPool().invoke(new NeighborTask(old, fresh, neighbors, 0, old.length));
+
+                    // lists that lost ground to a changed movie are rebuilt against every candidate, not just the fresh ones
+                    Entry[] shrunk = Arrays.stream(old)
+                        .filter(entry -> lostNeighbor(current.neighbors.get(entry.doc.id), neighbors.get(entry.doc.id), changed))
+                        .toArray(Entry[]::new);
+                    for (Entry entry : shrunk) {
+                        neighbors.remove(entry.doc.id);
+                    }
+                    ForkJoinPool.commonPool().invoke(new NeighborTask(shrunk, all, neighbors, 0, shrunk.length));
+                }
+            }
+
+            SparseVector profile = null;
+            Set<Integer> seeded = new HashSet<>();
+            for (Map<Integer, Float> seeds : List.of(favoriteSeeds, ratingSeeds)) {
+                for (Map.Entry<Integer, Float> seed : seeds.entrySet()) {
+                    Entry entry = vectors.get(seed.getKey());
+                    if (entry != null) {
+                        profile = entry.vector.scaled(seed.getValue()).plus(profile);
+                    }
+                    seeded.add(seed.getKey());
+                }
+            }
+            snapshot = new Snapshot(vectors, neighbors, profile == null ? null : profile.normalized(), seeded);
+            pending.clear();
+            seedsChanged = false;
+
+            if (persist) {
+                save();
+            }
+        }
+
+        private void save() {
+            JSONArray saved = new JSONArray();
+            docs.values().forEach(doc -> saved.put(doc.toJson()));
+            try {
+                Files.createDirectories(file.getParent());
+                Path temp = Files.createTempFile(file.getParent(), "corpus", ".tmp");
+                Files.writeString(temp, saved.toString(), StandardCharsets.UTF_8);
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException ignored) {
+                // the index still works for this session
+            }
+        }
+
+        private SparseVector vectorize(MovieDoc doc) {
+            TreeMap<Integer, Float> genres = new TreeMap<>();
+            for (int genre : doc.genres) {
+                genres.put(dim("g:" + genre), 1f);
+            }
+
+            // soft buckets: the neighboring bucket gets half the weight, so 1999 and 2001 still look alike
+            TreeMap<Integer, Float> year = new TreeMap<>();
+            if (doc.year > 0) {
+                year.put(dim("y:" + doc.year / 5), 1f);
+                year.put(dim("y:" + (doc.year / 5 + (doc.year % 5 < 3 ? -1 : 1))), 0.5f);
+            }
+            TreeMap<Integer, Float> vote = new TreeMap<>();
+            if (doc.vote > 0) {
+                vote.put(dim("v:" + Math.round(doc.vote)), 1f);
+                vote.put(dim("v:" + (Math.round(doc.vote) + (doc.vote < Math.round(doc.vote) ? -1 : 1))), 0.5f);
+            }
+
+            TreeMap<Integer, Float> text = new TreeMap<>();
+            int corpus = docs.size();
+            for (Map.Entry<String, Integer> term : doc.terms.entrySet()) {
+                int dim = dim("t:" + term.getKey());
+                double idf = Math.log((corpus + 1.0) / (documentFrequency.getOrDefault(dim, 0) + 1.0)) + 1;
+                text.put(dim, (float) ((1 + Math.log(term.getValue())) * idf));
+            }
+
+            // each group is normalized before weighting, so a long overview can't drown out the genres
+            return SparseVector.of(genres)
+                .normalized()
+                .scaled(GENRE_WEIGHT)
+                .plus(SparseVector.of(text).normalized().scaled(TEXT_WEIGHT))
+                .plus(SparseVector.of(year).normalized().scaled(YEAR_WEIGHT))
+                .plus(SparseVector.of(vote).normalized().scaled(VOTE_WEIGHT))
+                .normalized();
+        }
+
+        // everything outside a full list scored at most its worst entry, so once a changed neighbor falls below that
+        // (or drops out) a movie outside the list may now deserve its place
+        private static boolean lostNeighbor(Neighbors before, Neighbors after, Set<Integer> changed) {
+            if (before == null || after == null || before.ids.length < TOP_K) {
+                return false;
+            }
+            Map<Integer, Float> kept = new HashMap<>();
+            for (int i = 0; i < after.ids.length; i++) {
+                kept.put(after.ids[i], after.scores[i]);
+            }
+            float worst = before.scores[before.ids.length - 1];
+            for (int id : before.ids) {
+                if (changed.contains(id) && (!kept.containsKey(id) || kept.get(id) < worst)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private int dim(String feature) {
+            return dims.computeIfAbsent(feature, key -> dims.size());
+        }
+
+        // splits the query movies in halves until the pieces are small, then scores each piece against every candidate
+        private static class NeighborTask extends RecursiveAction {
+
+            private static final long serialVersionUID = 1L;
+            private static final int THRESHOLD = 32;
+
+            private final Entry[] queries;
+            private final Entry[] candidates;
+            private final Map<Integer, Neighbors> results;
+            private final int from;
+            private final int to;
+
+            NeighborTask(Entry[] queries, Entry[] candidates, Map<Integer, Neighbors> results, int from, int to) {
+                this.queries = queries;
+                this.candidates = candidates;
+                this.results = results;
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected void compute() {
+                if (to - from > THRESHOLD) {
+                    int middle = (from + to) >>> 1;
+                    invokeAll(
+                        new NeighborTask(queries, candidates, results, from, middle),
+                        new NeighborTask(queries, candidates, results, middle, to)
+                    );
+                    return;
+                }
+                for (int i = from; i < to; i++) {
+                    Entry query = queries[i];
+                    Neighbors existing;
+                    synchronized (results) {
+                        existing = results.get(query.doc.id);
+                    }
+                    Neighbors.Builder top = new Neighbors.Builder(TOP_K, existing);
+                    for (Entry candidate : candidates) {
+                        if (candidate.doc.id != query.doc.id) {
+                            top.offer(candidate.doc.id, query.vector.dot(candidate.vector));
+                        }
+                    }
+                    Neighbors built = top.build();
+                    synchronized (results) {
+                        results.put(query.doc.id, built);
+                    }
+                }
+            }
+        }
+
+        // the best TOP_K neighbors of one movie, best first
+        private static class Neighbors {
+
+            final int[] ids;
+            final float[] scores;
+
+            Neighbors(int[] ids, float[] scores) {
+                this.ids = ids;
+                this.scores = scores;
+            }
+
+            static class Builder {
+
+                private final int[] ids;
+                private final float[] scores;
+                private int size = 0;
+
+                // starts from the existing list, re-scored ids replace their old entry as they are offered
+                Builder(int capacity, Neighbors existing) {
+                    ids = new int[capacity];
+                    scores = new float[capacity];
+                    if (existing != null) {
+                        for (int i = 0; i < existing.ids.length; i++) {
+                            offer(existing.ids[i], existing.scores[i]);
+                        }
+                    }
+                }
+
+                void offer(int id, float score) {
+                    for (int i = 0; i < size; i++) {
+                        if (ids[i] == id) {
+                            // a re-scored movie replaces its old entry
+                            System.arraycopy(ids, i + 1, ids, i, size - i - 1);
+                            System.arraycopy(scores, i + 1, scores, i, size - i - 1);
+                            size--;
+                            break;
+                        }
+                    }
+                    if (size == ids.length && score <= scores[size - 1]) {
+                        return;
+                    }
+                    int at = size == ids.length ? size - 1 : size++;
+                    while (at > 0 && scores[at - 1] < score) {
+                        ids[at] = ids[at - 1];
+                        scores[at] = scores[at - 1];
+                        at--;
+                    }
+                    ids[at] = id;
+                    scores[at] = score;
+                }
+
+                Neighbors build() {
+                    return new Neighbors(Arrays.copyOf(ids, size), Arrays.copyOf(scores, size));
+                }
+            }
+        }
+
+        // sorted dimension ids with their weights, dot products are a merge of the two sorted arrays
+        private static class SparseVector {
+
+            final int[] dims;
+            final float[] weights;
+
+            SparseVector(int[] dims, float[] weights) {
+                this.dims = dims;
+                this.weights = weights;
+            }
+
+            static SparseVector of(TreeMap<Integer, Float> values) {
+                int[] dims = new int[values.size()];
+                float[] weights = new float[values.size()];
+                int i = 0;
+                for (Map.Entry<Integer, Float> value : values.entrySet()) {
+                    dims[i] = value.getKey();
+                    weights[i++] = value.getValue();
+                }
+                return new SparseVector(dims, weights);
+            }
+
+            float dot(SparseVector other) {
+                float sum = 0;
+                int i = 0;
+                int j = 0;
+                while (i < dims.length && j < other.dims.length) {
+                    if (dims[i] == other.dims[j]) {
+                        sum += weights[i++] * other.weights[j++];
+                    } else if (dims[i] < other.dims[j]) {
+                        i++;
+                    } else {
+                        j++;
+                    }
+                }
+                return sum;
+            }
+
+            SparseVector scaled(float factor) {
+                float[] result = new float[weights.length];
+                for (int i = 0; i < weights.length; i++) {
+                    result[i] = weights[i] * factor;
+                }
+                return new SparseVector(dims, result);
+            }
+
+            SparseVector normalized() {
+                float norm = (float) Math.sqrt(dot(this));
+                return norm == 0 ? this : scaled(1 / norm);
+            }
+
+            SparseVector plus(SparseVector other) {
+                if (other == null) {
+                    return this;
+                }
+                TreeMap<Integer, Float> sum = new TreeMap<>();
+                for (int i = 0; i < dims.length; i++) {
+                    sum.merge(dims[i], weights[i], Float::sum);
+                }
+                for (int i = 0; i < other.dims.length; i++) {
+                    sum.merge(other.dims[i], other.weights[i], Float::sum);
+                }
+                return of(sum);
+            }
+        }
+
+        private static class MovieDoc {
+
+            final int id;
+            final String title;
+            final int[] genres;
+            final int year;
+            final double vote;
+            final String overview;
+            final Map<String, Integer> terms = new HashMap<>();
+
+            MovieDoc(int id, String title, int[] genres, int year, double vote, String overview) {
+                this.id = id;
+                this.title = title;
+                this.genres = genres;
+                this.year = year;
+                this.vote = vote;
+                this.overview = overview;
+                for (String word : overview.toLowerCase().split("[^a-z]+")) {
+                    if (word.length() > 2 && !STOP_WORDS.contains(word)) {
+                        terms.merge(word, 1, Integer::sum);
+                    }
+                }
+            }
+
+            static MovieDoc fromJson(JSONObject movie) {
+                JSONArray genreIds = movie.optJSONArray("genre_ids");
+                JSONArray genreObjects = movie.optJSONArray("genres");
+                int count = genreIds != null ? genreIds.length() : genreObjects != null ? genreObjects.length() : 0;
+                int[] genres = new int[count];
+                for (int i = 0; i < count; i++) {
+                    genres[i] = genreIds != null ? genreIds.getInt(i) : genreObjects.getJSONObject(i).getInt("id");
+                }
+                String releaseDate = movie.optString("release_date", "");
+                boolean hasYear = releaseDate.length() >= 4 && releaseDate.substring(0, 4).matches("\\d{4}");
+                int year = hasYear ? Integer.parseInt(releaseDate.substring(0, 4)) : 0;
+                return new MovieDoc(
+                    movie.getInt("id"),
+                    movie.optString("title", ""),
+                    genres,
+                    year,
+                    movie.optDouble("vote_average", 0),
+                    movie.optString("overview", "")
+                );
+            }
+
+            JSONObject toJson() {
+                return new JSONObject()
+                    .put("id", id)
+                    .put("title", title)
+                    .put("genre_ids", new JSONArray(genres))
+                    .put("release_date", year > 0 ? year + "" : "")
+                    .put("vote_average", vote)
+                    .put("overview", overview);
+            }
+
+            boolean sameFeatures(MovieDoc other) {
+                return Arrays.equals(genres, other.genres) && year == other.year && vote == other.vote && overview.equals(other.overview);
+            }
+        }
+
+        private static class Entry {
+
+            final MovieDoc doc;
+            final SparseVector vector;
+
+            Entry(MovieDoc doc, SparseVector vector) {
+                this.doc = doc;
+                this.vector = vector;
+            }
+        }
+
+        private static class Snapshot {
+
+            final Map<Integer, Entry> vectors;
+            final Map<Integer, Neighbors> neighbors;
+            final SparseVector profile; // null until we know at least one rated or favorite movie
+            final Set<Integer> seeded;
+
+            Snapshot(Map<Integer, Entry> vectors, Map<Integer, Neighbors> neighbors, SparseVector profile, Set<Integer> seeded) {
+                this.vectors = vectors;
+                this.neighbors = neighbors;
+                this.profile = profile;
+                this.seeded = seeded;
+            }
+        }
+
+        public static class Match {
+
+            public final int movieId;
+            public final String title;
+            public final int year;
+            public final double vote;
+            public final float similarity;
+            private final float rank;
+
+            Match(Entry entry, float similarity, float rank) {
+                this.movieId = entry.doc.id;
+                this.title = entry.doc.title;
+                this.year = entry.doc.year;
+                this.vote = entry.doc.vote;
+                this.similarity = similarity;
+                this.rank = rank;
+            }
+        }
+    }
+
+    // content-addressed on-disk cache for poster and backdrop images
+    // blobs are named after the sha-256 of their bytes, and a small index maps each image url to its blob
+    // the index is kept in least-recently-used order and the oldest entries are evicted once the size budget is exceeded
+    // downloads run on their own daemon threads and blobs are written through asynchronous file channels,
+    // so callers only ever get a future back and the menu thread never waits on the network or the disk
+    public static class ImageCache {
+
+        private final Path dir;
+        private final long budgetBytes;
+        private final ExecutorService downloads = Executors.newFixedThreadPool(4, runnable -> {
+            Thread thread = new Thread(runnable, "image-downloads");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // url -> entry, iteration order is least recently used first
+        private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+
+        // one future per url being downloaded, so a poster shown on several screens is only fetched once
+        private final Map<String, CompletableFuture<Path>> inFlight = new ConcurrentHashMap<>();
+        private long totalBytes = 0;
+
+        // the index is read on a download thread, requests made before it is done simply wait for it in the background
+        private final CompletableFuture<Void> indexLoaded;
+
+        // bumped on every change to 'entries' (including hits, which reorder them),
+        // so an index write that lost the race to a newer one is skipped instead of overwriting it
+        private long version = 0;
+        private long savedVersion = 0;
+        private final Object indexWriter = new Object();
+
+        // a run of hits (a whole listing of cached posters) queues a single index write instead of one per hit
+        private boolean indexSaveQueued = false;
+
+        public ImageCache(Path dir, long budgetBytes) {
+            this.dir = dir;
+            this.budgetBytes = budgetBytes;
+            this.indexLoaded = CompletableFuture.runAsync(this::loadIndex, downloads);
+        }
+
+        // returns the cached file right away when we have it, otherwise starts (or joins) a background download
+        public CompletableFuture<Path> request(String url) {
+            if (!indexLoaded.isDone()) {
+                return indexLoaded.thenCompose(ignored -> request(url));
+            }
+            Entry entry;
+            boolean queueSave = false;
+            synchronized (this) {
+                entry = entries.get(url); // marks the entry as recently used
+                if (entry != null) {
+                    version++;
+                    queueSave = !indexSaveQueued;
+                    indexSaveQueued = true;
+                }
+            }
+            if (queueSave) {
+                // the new lru order is written by a download thread, never by the caller
+                downloads.execute(this::saveIndex);
+            }
+            if (entry != null && Files.exists(blob(entry.hash))) {
+                return CompletableFuture.completedFuture(blob(entry.hash));
+            }
+            CompletableFuture<Path> download = inFlight.computeIfAbsent(
+                url,
+                key -> CompletableFuture.supplyAsync(() -> fetch(key), downloads).thenCompose(bytes -> store(key, bytes))
+            );
+            // registered outside computeIfAbsent: a download that already failed runs this right away,
+            // and removing from inside the mapping function would throw and leave the failed download in the map for good
+            download.whenComplete((path, error) -> inFlight.remove(url, download));
+            return download;
+        }
+
+        // the cached file if it is ready right now, or null without waiting
+        public Path getNow(String url) {
+            CompletableFuture<Path> future = request(url);
+            return future.isDone() && !future.isCompletedExceptionally() ? future.join() : null;
+        }
+
+        private byte[] fetch(String url) {
+            try {
+                HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+                conn.setConnectTimeout(5000);
+                conn.setReadTimeout(10000);
+                try {
+                    if (conn.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                        throw new IOException("Response code: " + conn.getResponseCode());
+                    }
+                    try (InputStream in = conn.getInputStream()) {
+                        return in.readAllBytes();
+                    }
+                } finally {
+                    conn.disconnect();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private CompletableFuture<Path> store(String url, byte[] bytes) {
+            String hash = sha256(bytes);
+            Path target = blob(hash);
+            CompletableFuture<Path> written = Files.exists(target) ? CompletableFuture.completedFuture(target) : writeBlob(bytes, target);
+            return written.thenApply(path -> {
+                List<String> evicted;
+                synchronized (this) {
+                    Entry previous = entries.put(url, new Entry(hash, bytes.length));
+                    totalBytes += bytes.length - (previous == null ? 0 : previous.size);
+                    version++;
+                    evicted = evict();
+                }
+
+                // the lock only covers the in-memory bookkeeping, the disk work happens after it is released
+                for (String unused : evicted) {
+                    try {
+                        Files.deleteIfExists(blob(unused));
+                    } catch (IOException ignored) {
+                        // a blob we fail to delete now is simply overwritten if the same image comes back
+                    }
+                }
+                saveIndex();
+                return path;
+            });
+        }
+
+        // writes to a temporary file through an asynchronous channel, then moves it into place
+        // so a half-written blob is never visible under its content hash
+        private CompletableFuture<Path> writeBlob(byte[] bytes, Path target) {
+            CompletableFuture<Path> done = new CompletableFuture<>();
+            try {
+                Files.createDirectories(dir);
+                Path temp = Files.createTempFile(dir, "download", ".tmp");
+                AsynchronousFileChannel channel = AsynchronousFileChannel.open(
+                    temp,
+                    Set.of(StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING),
+                    downloads
+                );
+                ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                channel.write(
+                    buffer,
+                    0,
+                    null,
+                    new CompletionHandler<Integer, Void>() {
+                        @Override
+                        public void completed(Integer written, Void attachment) {
+                            if (buffer.hasRemaining()) {
+                                // a single write may be partial, keep going from where it stopped
+                                channel.write(buffer, buffer.position(), null, this);
+                                return;
+                            }
+                            try {
+                                channel.close();
+                                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                                done.complete(target);
+                            } catch (IOException e) {
+                                failed(e, attachment);
+                            }
+                        }
+
+                        @Override
+                        public void failed(Throwable error, Void attachment) {
+                            try {
+                                channel.close();
+                                Files.deleteIfExists(temp);
+                            } catch (IOException ignored) {
+                                // nothing else to clean up
+                            }
+                            done.completeExceptionally(error);
+                        }
+                    }
+                );
+            } catch (IOException e) {
+                done.completeExceptionally(e);
+            }
+            return done;
+        }
+
+        // drops the least recently used entries until we are back under budget, returns the blobs nothing references anymore
+        private List<String> evict() {
+            List<String> unused = new ArrayList<>();
+            Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+            while (totalBytes > budgetBytes && eldest.hasNext()) {
+                Entry entry = eldest.next().getValue();
+                eldest.remove();
+                totalBytes -= entry.size;
+
+                // two urls can point at the same bytes, only delete the blob when nothing references it anymore
+                boolean shared = entries.values().stream().anyMatch(other -> other.hash.equals(entry.hash));
+                if (!shared) {
+                    unused.add(entry.hash);
+                }
+            }
+            return unused;
+        }
+
+        // index lines are "<hash> <size> <url>", least recently used first
+        // the file is read and checked without the lock, only the finished entries are published under it
+        private void loadIndex() {
+            Path index = dir.resolve("index");
+            if (!Files.exists(index)) {
+                return;
+            }
+            LinkedHashMap<String, Entry> loaded = new LinkedHashMap<>();
+            try {
+                for (String line : Files.readAllLines(index, StandardCharsets.UTF_8)) {
+                    String[] parts = line.split(" ", 3);
+                    if (parts.length == 3 && Files.exists(blob(parts[0]))) {
+                        loaded.put(parts[2], new Entry(parts[0], Long.parseLong(parts[1])));
+                    }
+                }
+            } catch (IOException | NumberFormatException e) {
+                // a damaged index only costs us some re-downloads
+                return;
+            }
+            synchronized (this) {
+                entries.putAll(loaded);
+                totalBytes = loaded.values().stream().mapToLong(entry -> entry.size).sum();
+            }
+        }
+
+        // only called on download threads, the snapshot is taken under the lock and written outside of it
+        private void saveIndex() {
+            StringBuilder content = new StringBuilder();
+            long snapshotVersion;
+            synchronized (this) {
+                snapshotVersion = version;
+                indexSaveQueued = false;
+                for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                    Entry value = entry.getValue();
+                    content.append(value.hash).append(' ').append(value.size).append(' ').append(entry.getKey()).append('\n');
+                }
+            }
+            synchronized (indexWriter) {
+                if (snapshotVersion <= savedVersion) {
+                    return;
+                }
+                try {
+                    Files.createDirectories(dir);
+                    Path temp = Files.createTempFile(dir, "index", ".tmp");
+                    Files.writeString(temp, content, StandardCharsets.UTF_8);
+                    Files.move(temp, dir.resolve("index"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    savedVersion = snapshotVersion;
+                } catch (IOException ignored) {
+                    // the cache still works for this session, the index is rebuilt from new downloads next time
+                }
+            }
+        }
+
+        private Path blob(String hash) {
+            return dir.resolve(hash);
+        }
+
+        private static class Entry {
+
+            final String hash;
+            final long size;
+
+            Entry(String hash, long size) {
+                this.hash = hash;
+                this.size = size;
+            }
+        }
+    }
+
+    // turns a cached poster into something a terminal can show
+    // half blocks work on any true color terminal: each character cell shows two pixels,
+    // the upper one as the foreground color of '▀' and the lower one as the background color
+    // sixel draws real pixels but only a handful of terminals understand it
+    public static class TerminalImages {
+
+        public enum Mode {
+            NONE,
+            HALF_BLOCKS,
+            SIXEL
+        }
+
+        // the TERMINAL_IMAGES setting (sixel, blocks or off) wins, otherwise we guess from the terminal's environment variables
+        public static Mode detect(String setting) {
+            if (setting != null) {
+                switch (setting.toLowerCase()) {
+                    case "sixel":
+                        return Mode.SIXEL;
+                    case "blocks":
+                        return Mode.HALF_BLOCKS;
+                    case "off":
+                        return Mode.NONE;
+                }
+            }
+            String term = String.valueOf(System.getenv("TERM"));
+            String colorTerm = String.valueOf(System.getenv("COLORTERM"));
+            if (term.contains("sixel") || term.startsWith("mlterm") || term.startsWith("foot")) {
+                return Mode.SIXEL;
+            }
+            if (colorTerm.equals("truecolor") || colorTerm.equals("24bit")) {
+                return Mode.HALF_BLOCKS;
+            }
+            return Mode.NONE;
+        }
+
+        // rough width of a character cell in pixels, used to size sixel output like the half block version
+        public static final int PIXELS_PER_COLUMN = 8;
+
+        // returns null when the file is not an image java can decode
+        public static String render(Path file, Mode mode, int columns) {
+            if (mode == Mode.NONE) {
+                return null;
+            }
+            try {
+                System.setProperty("java.awt.headless", "true");
+                BufferedImage image = ImageIO.read(file.toFile());
+                if (image == null) {
+                    return null;
+                }
+                return mode == Mode.SIXEL ? sixel(image, columns * PIXELS_PER_COLUMN) : halfBlocks(image, columns);
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        private static String halfBlocks(BufferedImage image, int columns) {
+            int height = Math.max(2, (int) Math.round((double) columns * image.getHeight() / image.getWidth()) & ~1);
+            BufferedImage scaled = scale(image, columns, height);
+            StringBuilder out = new StringBuilder();
+            for (int y = 0; y < height; y += 2) {
+                for (int x = 0; x < columns; x++) {
+                    int top = scaled.getRGB(x, y);
+                    int bottom = scaled.getRGB(x, y + 1);
+                    out.append("\u001B[38;2;").append(rgb(top)).append("m\u001B[48;2;").append(rgb(bottom)).append("m▀");
+                }
+                out.append("\u001B[0m\n");
+            }
+            return out.toString();
+        }
+
+        // quantizes to a 6x6x6 color cube, which keeps the encoder simple and is plenty for a thumbnail
+        private static String sixel(BufferedImage image, int width) {
+            int height = Math.max(1, (int) Math.round((double) width * image.getHeight() / image.getWidth()));
+            BufferedImage scaled = scale(image, width, height);
+            int[][] colors = new int[height][width];
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    int pixel = scaled.getRGB(x, y);
+                    colors[y][x] = cube(pixel >> 16) * 36 + cube(pixel >> 8) * 6 + cube(pixel);
+                }
+            }
+
+            StringBuilder out = new StringBuilder("\u001BPq\"1;1;" + width + ";" + height);
+            for (int i = 0; i < 216; i++) {
+                // sixel palette channels are percentages, so the six cube steps are 0, 20, ... 100
+                out.append('#').append(i).append(";2;").append(i / 36 * 20).append(';').append(i / 6 % 6 * 20).append(';');
+                out.append(i % 6 * 20);
+            }
+            for (int band = 0; band < height; band += 6) {
+                boolean first = true;
+                for (int color = 0; color < 216; color++) {
+                    StringBuilder row = new StringBuilder();
+                    boolean used = false;
+                    char run = 0;
+                    int runLength = 0;
+                    for (int x = 0; x < width; x++) {
+                        int bits = 0;
+                        for (int dy = 0; dy < 6 && band + dy < height; dy++) {
+                            if (colors[band + dy][x] == color) {
+                                bits |= 1 << dy;
+                            }
+                        }
+                        used |= bits != 0;
+                        char sixel = (char) (63 + bits);
+                        if (sixel == run) {
+                            runLength++;
+                        } else {
+                            appendRun(row, run, runLength);
+                            run = sixel;
+                            runLength = 1;
+                        }
+                    }
+                    if (used) {
+                        appendRun(row, run, runLength);
+                        out.append(first ? "" : "$").append('#').append(color).append(row);
+                        first = false;
+                    }
+                }
+                out.append('-');
+            }
+            return out.append("\u001B\\\n").toString();
+        }
+
+        private static void appendRun(StringBuilder row, char sixel, int length) {
+            if (length > 3) {
+                row.append('!').append(length).append(sixel);
+            } else {
+                for (int i = 0; i < length; i++) {
+                    row.append(sixel);
+                }
+            }
+        }
+
+        private static BufferedImage scale(BufferedImage image, int width, int height) {
+            BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = scaled.createGraphics();
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(image.getScaledInstance(width, height, Image.SCALE_AREA_AVERAGING), 0, 0, null);
+            graphics.dispose();
+            return scaled;
+        }
+
+        private static String rgb(int pixel) {
+            return ((pixel >> 16) & 0xFF) + ";" + ((pixel >> 8) & 0xFF) + ";" + (pixel & 0xFF);
+        }
+
+        private static int cube(int channel) {
+            return ((channel & 0xFF) * 5 + 127) / 255;
         }
-        return overview.substring(0, maxLength) + "..."; // truncate and append ellipsis
     }
 
     // utility class to perform console-related actions